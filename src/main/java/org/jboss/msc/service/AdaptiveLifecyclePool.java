@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread pool for service lifecycle tasks which sizes itself according to how the tasks spend their time.  The
+ * wall clock and CPU time of each task are sampled; once a window of tasks has completed, the pool grows if more
+ * tasks are queued and the tasks mostly waited (for I/O, locks or sleeps) or there are idle processors to run them,
+ * shrinks back towards the number of processors if the tasks were mostly busy, and shrinks back towards its minimum
+ * size once nothing is queued.  The pool starts at its minimum size and always stays within the configured bounds.
+ */
+final class AdaptiveLifecyclePool extends ThreadPoolExecutor {
+
+    /**
+     * The number of tasks sampled before the pool size is reconsidered.
+     */
+    private static final int WINDOW_SIZE = 16;
+    /**
+     * Below this share of CPU time, the sampled tasks are considered blocked.
+     */
+    private static final double BLOCKED_RATIO = 0.5;
+    /**
+     * Above this share of CPU time, the sampled tasks are considered CPU-bound.
+     */
+    private static final double BUSY_RATIO = 0.8;
+
+    private static final AtomicInteger poolSeq = new AtomicInteger(1);
+    private static final ThreadLocal<long[]> TASK_START = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    private final ThreadMXBean threadMXBean;
+    private final int minSize;
+    private final int maxSize;
+    private final int cpuSize;
+    private final Object windowLock = new Object();
+    // guarded by windowLock
+    private long windowWallTime;
+    private long windowCpuTime;
+    private int windowCount;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param minSize the minimum number of threads
+     * @param maxSize the maximum number of threads
+     * @param keepAliveTime the amount of time that threads beyond the current size linger without tasks
+     * @param unit the time unit for {@code keepAliveTime}
+     */
+    AdaptiveLifecyclePool(final int minSize, final int maxSize, final long keepAliveTime, final TimeUnit unit) {
+        super(minSize, maxSize, keepAliveTime, unit, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final int id = poolSeq.getAndIncrement();
+            private final AtomicInteger threadSeq = new AtomicInteger(1);
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setName(String.format("MSC lifecycle thread %d-%d", Integer.valueOf(id), Integer.valueOf(threadSeq.getAndIncrement())));
+                return thread;
+            }
+        });
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        cpuSize = Math.min(Math.max(Runtime.getRuntime().availableProcessors(), minSize), maxSize);
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        this.threadMXBean = threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled() ? threadMXBean : null;
+    }
+
+    protected void beforeExecute(final Thread t, final Runnable r) {
+        super.beforeExecute(t, r);
+        final ThreadMXBean threadMXBean = this.threadMXBean;
+        if (threadMXBean != null) {
+            final long[] taskStart = TASK_START.get();
+            taskStart[0] = System.nanoTime();
+            taskStart[1] = threadMXBean.getCurrentThreadCpuTime();
+        }
+    }
+
+    protected void afterExecute(final Runnable r, final Throwable t) {
+        super.afterExecute(r, t);
+        if (t != null) {
+            ServiceLogger.ROOT.uncaughtException(t, Thread.currentThread());
+        }
+        final ThreadMXBean threadMXBean = this.threadMXBean;
+        if (threadMXBean == null) {
+            return;
+        }
+        final long[] taskStart = TASK_START.get();
+        final long wallTime = System.nanoTime() - taskStart[0];
+        final long cpuTime = threadMXBean.getCurrentThreadCpuTime() - taskStart[1];
+        final double cpuRatio;
+        synchronized (windowLock) {
+            windowWallTime += wallTime;
+            windowCpuTime += cpuTime;
+            if (++windowCount < WINDOW_SIZE) {
+                return;
+            }
+            cpuRatio = windowWallTime <= 0L ? 1.0 : (double) windowCpuTime / (double) windowWallTime;
+            windowWallTime = 0L;
+            windowCpuTime = 0L;
+            windowCount = 0;
+        }
+        resize(cpuRatio);
+    }
+
+    private void resize(final double cpuRatio) {
+        synchronized (windowLock) {
+            final int size = getCorePoolSize();
+            if (getQueue().isEmpty()) {
+                // nothing is waiting for a thread
+                if (size > minSize) {
+                    setCorePoolSize(Math.max(minSize, size - Math.max(1, size >> 2)));
+                }
+            } else if (cpuRatio < BLOCKED_RATIO) {
+                // threads are mostly waiting, so more of them get more of the queued work going
+                if (size < maxSize) {
+                    setCorePoolSize(Math.min(maxSize, size + Math.max(1, size >> 1)));
+                }
+            } else if (size < cpuSize) {
+                // queued work and idle processors
+                setCorePoolSize(Math.min(cpuSize, size + Math.max(1, size >> 1)));
+            } else if (cpuRatio > BUSY_RATIO && size > cpuSize) {
+                // threads are mostly busy; having more of them than processors only adds contention
+                setCorePoolSize(Math.max(cpuSize, size - Math.max(1, size >> 2)));
+            }
+        }
+    }
+}
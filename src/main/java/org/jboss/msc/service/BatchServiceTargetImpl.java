@@ -22,8 +22,11 @@
 
 package org.jboss.msc.service;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.value.ImmediateValue;
@@ -47,11 +50,7 @@ class BatchServiceTargetImpl extends ServiceTargetImpl implements BatchServiceTa
     public void removeServices() {
         final Collection<ServiceController<?>> controllers = addedServiceControllers;
         synchronized(controllers) {
-            for (ServiceController<?> serviceController : controllers) {
-                if (serviceController != null) {
-                    serviceController.setMode(Mode.REMOVE);
-                }
-            }
+            ServiceControllerImpl.setModes(null, controllers, Mode.REMOVE);
             controllers.clear();
         }
     }
@@ -65,6 +64,41 @@ class BatchServiceTargetImpl extends ServiceTargetImpl implements BatchServiceTa
         return controller;
     }
 
+    @Override
+    public List<ServiceController<?>> install(final Collection<? extends ServiceBuilder<?>> serviceBuilders) throws ServiceRegistryException {
+        if (serviceBuilders == null) {
+            throw new IllegalArgumentException("serviceBuilders is null");
+        }
+        final List<ServiceBuilderImpl<?>> builders = new ArrayList<ServiceBuilderImpl<?>>(serviceBuilders.size());
+        final Set<ServiceBuilderImpl<?>> seen = new IdentityHashSet<ServiceBuilderImpl<?>>();
+        for (ServiceBuilder<?> serviceBuilder : serviceBuilders) {
+            if (! (serviceBuilder instanceof ServiceBuilderImpl) || ((ServiceBuilderImpl<?>) serviceBuilder).getTarget() != this) {
+                throw new IllegalArgumentException("Service builder was not created by this target");
+            }
+            final ServiceBuilderImpl<?> builder = (ServiceBuilderImpl<?>) serviceBuilder;
+            if (builder.isInstalled()) {
+                throw new IllegalStateException("ServiceBuilder is already installed");
+            }
+            if (! seen.add(builder)) {
+                throw new IllegalArgumentException("Service builder appears more than once");
+            }
+            builders.add(builder);
+        }
+        for (ServiceBuilderImpl<?> builder : builders) {
+            builder.markInstalled();
+        }
+        return installAll(builders);
+    }
+
+    List<ServiceController<?>> installAll(final List<ServiceBuilderImpl<?>> serviceBuilders) throws ServiceRegistryException {
+        final List<ServiceController<?>> installed = super.installAll(serviceBuilders);
+        final Collection<ServiceController<?>> controllers = addedServiceControllers;
+        synchronized (controllers) {
+            controllers.addAll(installed);
+        }
+        return installed;
+    }
+
     @Override
     public <T> ServiceBuilder<T> addService(ServiceName name, Service<T> service) {
         return addServiceValue(name, new ImmediateValue<Service<T>>(service));
@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.msc.service;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+
+/**
+ * Capture of the source location from which a service builder is called.  Building the stack trace of a
+ * {@code Throwable} resolves every frame of the stack, so where the {@code StackWalker} API is available (Java 9 and
+ * later), it is used to resolve just the frames up to the caller.  It is only reached by reflection, since this code
+ * also has to run on older platforms.
+ */
+final class CallerLocations {
+
+    private static final Object WALKER;
+    private static final Method WALK;
+    private static final Method GET_FILE_NAME;
+    private static final Method GET_LINE_NUMBER;
+    /**
+     * The function passed to {@code StackWalker.walk()}, which returns the first stack frame outside of this class and
+     * the service builder, or {@code null} if there is none.
+     */
+    private static final Object CALLER_FRAME;
+
+    static {
+        Object walker = null;
+        Method walk = null;
+        Method getFileName = null;
+        Method getLineNumber = null;
+        Object callerFrame = null;
+        try {
+            final Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            final Class<?> functionClass = Class.forName("java.util.function.Function");
+            final Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+            final Method iterator = Class.forName("java.util.stream.BaseStream").getMethod("iterator");
+            final Method getClassName = frameClass.getMethod("getClassName");
+            walker = walkerClass.getMethod("getInstance").invoke(null);
+            walk = walkerClass.getMethod("walk", functionClass);
+            getFileName = frameClass.getMethod("getFileName");
+            getLineNumber = frameClass.getMethod("getLineNumber");
+            callerFrame = Proxy.newProxyInstance(CallerLocations.class.getClassLoader(), new Class<?>[] { functionClass }, new InvocationHandler() {
+                public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(this, args);
+                    }
+                    final Iterator<?> frames = (Iterator<?>) iterator.invoke(args[0]);
+                    while (frames.hasNext()) {
+                        final Object frame = frames.next();
+                        if (! isBuilderFrame((String) getClassName.invoke(frame))) {
+                            return frame;
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (Throwable ignored) {
+            walker = null;
+        }
+        WALKER = walker;
+        WALK = walk;
+        GET_FILE_NAME = getFileName;
+        GET_LINE_NUMBER = getLineNumber;
+        CALLER_FRAME = callerFrame;
+    }
+
+    private CallerLocations() {
+    }
+
+    /**
+     * Determine whether a stack frame belongs to the capture itself or to a service builder on the way to it.  A fixed
+     * number of frames cannot be skipped instead, since a call through {@link ServiceBuilder} goes through the bridge
+     * method that the compiler generates in {@link ServiceBuilderImpl} for the covariant return type, and may go
+     * through a {@link DelegatingServiceBuilder} as well.
+     */
+    private static boolean isBuilderFrame(final String className) {
+        return className.equals(CallerLocations.class.getName()) || className.equals(ServiceBuilderImpl.class.getName())
+                || className.equals(DelegatingServiceBuilder.class.getName());
+    }
+
+    /**
+     * Get the location from which the service builder was called.
+     *
+     * @return the location, or {@code null} if it cannot be determined
+     */
+    static Location caller() {
+        if (WALKER != null) {
+            try {
+                final Object frame = WALK.invoke(WALKER, CALLER_FRAME);
+                if (frame != null) {
+                    return new Location((String) GET_FILE_NAME.invoke(frame), ((Integer) GET_LINE_NUMBER.invoke(frame)).intValue(), -1, null);
+                }
+            } catch (Exception ignored) {
+                // fall back to the stack trace
+            }
+        }
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            if (! isBuilderFrame(element.getClassName())) {
+                return new Location(element.getFileName(), element.getLineNumber(), -1, null);
+            }
+        }
+        return null;
+    }
+}
@@ -25,6 +25,7 @@ package org.jboss.msc.service;
 import java.io.PrintStream;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -136,6 +137,48 @@ public final class DelegatingServiceContainer implements ServiceContainer {
         return delegateRegistry.getServiceNames();
     }
 
+    /** {@inheritDoc} */
+    public void setMode(final Collection<? extends ServiceController<?>> controllers, final ServiceController.Mode mode) throws IllegalArgumentException {
+        if (controllers == null) {
+            throw new IllegalArgumentException("controllers is null");
+        }
+        if (mode == null) {
+            throw new IllegalArgumentException("mode is null");
+        }
+        ServiceControllerImpl.setModes(getContainer(delegateRegistry), controllers, mode);
+    }
+
+    /**
+     * Get the container behind a registry, or {@code null} if it cannot be determined.
+     */
+    private static ServiceContainerImpl getContainer(final ServiceRegistry registry) {
+        if (registry instanceof ServiceContainerImpl) {
+            return (ServiceContainerImpl) registry;
+        } else if (registry instanceof DelegatingServiceContainer) {
+            return getContainer(((DelegatingServiceContainer) registry).delegateRegistry);
+        } else {
+            return null;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public List<ServiceController<?>> getServices(final ServiceName parent) throws IllegalArgumentException {
+        return delegateRegistry.getServices(parent);
+    }
+
+    /** {@inheritDoc} */
+    public void setMode(final ServiceName parent, final ServiceController.Mode mode) throws IllegalArgumentException {
+        setMode(getServices(parent), mode);
+    }
+
+    /**
+     * {@inheritDoc}  The activators are run one after the other on the calling thread, against batch targets of the
+     * delegate target.
+     */
+    public Map<ServiceActivator, Throwable> activate(final Collection<? extends ServiceActivator> activators) throws IllegalArgumentException {
+        return ServiceActivators.activate(ServiceActivators.check(activators), delegateTarget, delegateRegistry, null, 1);
+    }
+
     /** {@inheritDoc} */
     public String getName() {
         throw new UnsupportedOperationException();
@@ -55,4 +55,9 @@ public final class DelegatingServiceRegistry implements ServiceRegistry {
     public List<ServiceName> getServiceNames() {
         return delegate.getServiceNames();
     }
+
+    /** {@inheritDoc} */
+    public List<ServiceController<?>> getServices(final ServiceName parent) throws IllegalArgumentException {
+        return delegate.getServices(parent);
+    }
 }
@@ -61,6 +61,24 @@ interface Dependency extends Value<Object> {
      */
     void removeDemand();
 
+    /**
+     * Notify that {@code count} {@link Dependent dependents} entered {@link Mode#ACTIVE active mode}.  This has the
+     * same effect as calling {@link #addDemand()} {@code count} times.
+     * This method must not be called under a lock.
+     *
+     * @param count the number of demands to add
+     */
+    void addDemands(int count);
+
+    /**
+     * Notify that {@code count} {@link Dependent dependents} left {@link Mode#ACTIVE active mode}.  This has the
+     * same effect as calling {@link #removeDemand()} {@code count} times.
+     * This method must not be called under a lock.
+     *
+     * @param count the number of demands to remove
+     */
+    void removeDemands(int count);
+
     /**
      * Notify that a {@link Dependent dependent} is starting.
      * This method must not be called under a lock.
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.msc.service.management.ExecutionLaneStatus;
+
+/**
+ * An execution lane, which runs one kind of container task on an underlying executor with a bounded number of tasks
+ * running at a time, and keeps track of its queue.  If the number is bounded, each running slot drains the lane queue
+ * on a single submission to the underlying executor; otherwise each task is run by a submission of its own, so that
+ * an executor which sizes itself by the tasks it runs sees every one of them.  Queued tasks count as outstanding
+ * tasks of the container, so that it does not terminate before they have run.
+ */
+final class ExecutionLane implements Executor {
+
+    private final ServiceContainerImpl container;
+    private final String name;
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicInteger peakQueueSize = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /**
+     * Construct a new instance.
+     *
+     * @param container the container whose tasks run in this lane
+     * @param name the lane name
+     * @param executor the underlying executor
+     * @param maxConcurrency the maximum number of tasks to run at a time, or 0 for no limit
+     */
+    ExecutionLane(final ServiceContainerImpl container, final String name, final Executor executor, final int maxConcurrency) {
+        this.container = container;
+        this.name = name;
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency == 0 ? Integer.MAX_VALUE : maxConcurrency;
+    }
+
+    public void execute(final Runnable command) {
+        submittedCount.incrementAndGet();
+        try {
+            container.addOutstandingTask();
+        } catch (RejectedExecutionException e) {
+            // the container has terminated, so nothing would run the task later
+            runTask(command);
+            return;
+        }
+        queue.add(command);
+        final int size = queueSize.incrementAndGet();
+        int peak;
+        do {
+            peak = peakQueueSize.get();
+        } while (size > peak && ! peakQueueSize.compareAndSet(peak, size));
+        if (acquireSlot()) {
+            try {
+                executor.execute(runner);
+            } catch (RejectedExecutionException e) {
+                runner.run();
+            }
+        }
+    }
+
+    /**
+     * Take a running slot if fewer than the maximum number of tasks are running and there is a task to run.
+     *
+     * @return {@code true} if a slot was taken
+     */
+    private boolean acquireSlot() {
+        int cnt;
+        do {
+            cnt = activeCount.get();
+            if (cnt >= maxConcurrency || queue.isEmpty()) {
+                return false;
+            }
+        } while (! activeCount.compareAndSet(cnt, cnt + 1));
+        return true;
+    }
+
+    private void runTask(final Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            ServiceLogger.ROOT.uncaughtException(t, Thread.currentThread());
+        } finally {
+            completedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Runs queued tasks while holding a slot, until the queue is empty or, if the lane is not bounded, until it has run
+     * one task, since every queued task then has a runner of its own.
+     */
+    private final Runnable runner = new Runnable() {
+        public void run() {
+            final boolean drain = maxConcurrency != Integer.MAX_VALUE;
+            do {
+                Runnable task;
+                while ((task = queue.poll()) != null) {
+                    queueSize.decrementAndGet();
+                    try {
+                        runTask(task);
+                    } finally {
+                        container.outstandingTaskComplete();
+                    }
+                    if (! drain) {
+                        activeCount.decrementAndGet();
+                        return;
+                    }
+                }
+                activeCount.decrementAndGet();
+                // a task may have been queued after the queue was found empty
+            } while (acquireSlot());
+        }
+    };
+
+    ExecutionLaneStatus getStatus() {
+        return new ExecutionLaneStatus(name, maxConcurrency == Integer.MAX_VALUE ? 0 : maxConcurrency, activeCount.get(), queueSize.get(), peakQueueSize.get(), submittedCount.get(), completedCount.get());
+    }
+}
@@ -117,6 +117,15 @@ class OptionalDependency implements Dependency, Dependent {
         dependencyState = DependencyState.INSTALLED;
     }
 
+    /**
+     * Returns the real dependency wrapped by this optional dependency.
+     *
+     * @return the real dependency
+     */
+    Dependency getOptionalDependency() {
+        return optionalDependency;
+    }
+
     @Override
     public void addDependent(Dependent dependent) {
         assert !holdsLock(this);
@@ -162,6 +171,11 @@ class OptionalDependency implements Dependency, Dependent {
 
     @Override
     public void addDemand() {
+        addDemands(1);
+    }
+
+    @Override
+    public void addDemands(final int count) {
         assert !holdsLock(this);
         final boolean notifyOptionalDependency;
         synchronized (this) {
@@ -169,12 +183,17 @@ class OptionalDependency implements Dependency, Dependent {
             notifyOptionalDependency = forwardNotifications;
         }
         if (notifyOptionalDependency) {
-            optionalDependency.addDemand();
+            optionalDependency.addDemands(count);
         }
     }
 
     @Override
     public void removeDemand() {
+        removeDemands(1);
+    }
+
+    @Override
+    public void removeDemands(final int count) {
         assert !holdsLock(this);
         final boolean startNotifying;
         final boolean notifyOptionalDependency;
@@ -207,7 +226,7 @@ class OptionalDependency implements Dependency, Dependent {
                 dependent.dependencyUninstalled();
             }
         } else if (notifyOptionalDependency) {
-            optionalDependency.removeDemand();
+            optionalDependency.removeDemands(count);
         }
     }
 
@@ -368,7 +387,12 @@ class OptionalDependency implements Dependency, Dependent {
 
     @Override
     public ServiceControllerImpl<?> getController() {
-        return dependent.getController();
+        final Dependent dependent;
+        synchronized (this) {
+            dependent = this.dependent;
+        }
+        // the dependent is not set yet while it is being added
+        return dependent == null ? null : dependent.getController();
     }
 
     @Override
@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a group of service activators concurrently.  Each activator gets a batch target of its own.  The work is
+ * shared between the calling thread and up to {@code parallelism - 1} tasks of an executor, each of which keeps
+ * taking the next activator which has not been claimed yet.  The calling thread never waits for a task which has not
+ * started, so activation completes even if the executor is saturated or is the very pool the caller runs on.
+ */
+final class ServiceActivators implements Runnable {
+
+    private final ServiceActivator[] activators;
+    private final BatchServiceTarget[] targets;
+    private final Throwable[] failures;
+    private final ServiceRegistry registry;
+    private final AtomicInteger next = new AtomicInteger();
+    private final CountDownLatch done;
+
+    private ServiceActivators(final ServiceActivator[] activators, final ServiceTarget target, final ServiceRegistry registry) {
+        this.activators = activators;
+        this.registry = registry;
+        targets = new BatchServiceTarget[activators.length];
+        for (int i = 0; i < activators.length; i ++) {
+            targets[i] = target.batchTarget();
+        }
+        failures = new Throwable[activators.length];
+        done = new CountDownLatch(activators.length);
+    }
+
+    /**
+     * Copy a collection of activators, checking it for {@code null}s.
+     *
+     * @param activators the activators
+     * @return a copy of the activators
+     * @throws IllegalArgumentException if {@code activators} is {@code null} or contains {@code null}
+     */
+    static List<ServiceActivator> check(final Collection<? extends ServiceActivator> activators) throws IllegalArgumentException {
+        if (activators == null) {
+            throw new IllegalArgumentException("activators is null");
+        }
+        final List<ServiceActivator> list = new ArrayList<ServiceActivator>(activators);
+        for (ServiceActivator activator : list) {
+            if (activator == null) {
+                throw new IllegalArgumentException("activator is null");
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Run the given activators and wait for all of them to return.  The services installed by an activator which
+     * fails are removed again.
+     *
+     * @param activators the activators
+     * @param target the target to create the batch targets from
+     * @param registry the registry to give to the activators
+     * @param executor the executor to run activators on besides the calling thread, or {@code null} to run all of
+     *      them on the calling thread
+     * @param parallelism the maximum number of activators to run at the same time
+     * @return the failure of each activator which failed
+     */
+    static Map<ServiceActivator, Throwable> activate(final List<ServiceActivator> activators, final ServiceTarget target, final ServiceRegistry registry, final Executor executor, final int parallelism) {
+        final int size = activators.size();
+        if (size == 0) {
+            return Collections.emptyMap();
+        }
+        final ServiceActivators activation = new ServiceActivators(activators.toArray(new ServiceActivator[size]), target, registry);
+        if (executor != null) {
+            final int helpers = Math.min(size, parallelism) - 1;
+            try {
+                for (int i = 0; i < helpers; i ++) {
+                    executor.execute(activation);
+                }
+            } catch (RejectedExecutionException e) {
+                // the calling thread does the rest
+            }
+        }
+        activation.run();
+        activation.awaitCompletion();
+        return activation.getFailures();
+    }
+
+    public void run() {
+        final ServiceActivator[] activators = this.activators;
+        int i;
+        while ((i = next.getAndIncrement()) < activators.length) {
+            try {
+                activators[i].activate(new ServiceActivatorContextImpl(targets[i], registry));
+            } catch (Throwable t) {
+                failures[i] = t;
+                targets[i].removeServices();
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    private void awaitCompletion() {
+        boolean intr = false;
+        try {
+            for (;;) {
+                try {
+                    done.await();
+                    return;
+                } catch (InterruptedException e) {
+                    intr = true;
+                }
+            }
+        } finally {
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Map<ServiceActivator, Throwable> getFailures() {
+        Map<ServiceActivator, Throwable> map = null;
+        for (int i = 0; i < failures.length; i ++) {
+            if (failures[i] != null) {
+                if (map == null) {
+                    map = new IdentityHashMap<ServiceActivator, Throwable>();
+                }
+                map.put(activators[i], failures[i]);
+            }
+        }
+        return map == null ? Collections.<ServiceActivator, Throwable>emptyMap() : map;
+    }
+}
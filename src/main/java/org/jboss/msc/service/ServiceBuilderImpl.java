@@ -23,9 +23,10 @@
 package org.jboss.msc.service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -50,17 +51,41 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     private final ServiceName serviceName;
     private Location location;
     private ServiceController.Mode initialMode = ServiceController.Mode.ACTIVE;
-    private final Set<ServiceName> aliases = new HashSet<ServiceName>(0);
-    private final Map<ServiceName, Dependency> dependencies = new HashMap<ServiceName, Dependency>(0);
-    private final Set<ServiceListener<? super T>> listeners = new IdentityHashSet<ServiceListener<? super T>>(0);
-    private final List<ValueInjection<?>> valueInjections = new ArrayList<ValueInjection<?>>(0);
-    private final List<Injector<? super T>> outInjections = new ArrayList<Injector<? super T>>(0);
+    // everything below is accumulated in arrays, grown as needed, which install reads without copying them first
+    private ServiceName[] aliases = NO_NAMES;
+    private int aliasCount;
+    private Dependency[] dependencies = NO_DEPENDENCIES;
+    private int dependencyCount;
+    /**
+     * The dependencies by name, once there are too many of them to search {@link #dependencies} linearly.
+     */
+    private Map<ServiceName, Dependency> dependencyIndex;
+    private ServiceListener<? super T>[] listeners = noListeners();
+    private int listenerCount;
+    /**
+     * The listeners, once there are too many of them to search {@link #listeners} linearly.
+     */
+    private Set<ServiceListener<? super T>> listenerIndex;
+    private ValueInjection<?>[] valueInjections = NO_INJECTIONS;
+    private int valueInjectionCount;
+    private Injector<? super T>[] outInjections = noInjectors();
+    private int outInjectionCount;
     private boolean installed = false;
 
+    private static final ServiceName[] NO_NAMES = new ServiceName[0];
+    private static final Dependency[] NO_DEPENDENCIES = new Dependency[0];
+    private static final ServiceListener<?>[] NO_LISTENERS = new ServiceListener<?>[0];
+    private static final ValueInjection<?>[] NO_INJECTIONS = new ValueInjection<?>[0];
+    private static final Injector<?>[] NO_INJECTORS = new Injector<?>[0];
+    /**
+     * The number of dependencies or listeners up to which duplicates are found by a linear search.
+     */
+    private static final int MAX_LINEAR_SEARCH = 8;
+
     static final class Dependency {
         private final ServiceName name;
         private DependencyType dependencyType;
-        private List<Injector<Object>> injectorList = new ArrayList<Injector<Object>>(0);
+        private List<Injector<Object>> injectorList = Collections.emptyList();
 
         Dependency(final ServiceName name, final DependencyType dependencyType) {
             this.name = name;
@@ -75,6 +100,13 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
             return injectorList;
         }
 
+        void addInjector(final Injector<Object> injector) {
+            if (injectorList.isEmpty()) {
+                injectorList = new ArrayList<Injector<Object>>(1);
+            }
+            injectorList.add(injector);
+        }
+
         DependencyType getDependencyType() {
             return dependencyType;
         }
@@ -94,11 +126,43 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
         this.serviceName = serviceName;
     }
 
+    @SuppressWarnings("unchecked")
+    private static <T> ServiceListener<? super T>[] noListeners() {
+        return (ServiceListener<? super T>[]) NO_LISTENERS;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Injector<? super T>[] noInjectors() {
+        return (Injector<? super T>[]) NO_INJECTORS;
+    }
+
+    /**
+     * Get an array with room for at least {@code capacity} elements, keeping the first elements of {@code array}.
+     */
+    private static <E> E[] ensureCapacity(final E[] array, final int capacity) {
+        final int length = array.length;
+        return capacity <= length ? array : Arrays.copyOf(array, Math.max(capacity, length + (length >> 1) + 1));
+    }
+
+    /**
+     * Get the first {@code count} elements of {@code array} in an array of exactly that length.
+     */
+    private static <E> E[] trim(final E[] array, final int count) {
+        return array.length == count ? array : Arrays.copyOf(array, count);
+    }
+
     @Override
     public ServiceBuilder<T> addAliases(ServiceName... aliases) {
-        for(ServiceName alias : aliases) {
+        ServiceName[] myAliases = ensureCapacity(this.aliases, aliasCount + aliases.length);
+        this.aliases = myAliases;
+        outer: for(ServiceName alias : aliases) {
             if(!alias.equals(serviceName)) {
-                this.aliases.add(alias);
+                for (int i = 0; i < aliasCount; i++) {
+                    if (myAliases[i].equals(alias)) {
+                        continue outer;
+                    }
+                }
+                myAliases[aliasCount++] = alias;
             }
         }
         return this;
@@ -107,10 +171,7 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     @Override
     public ServiceBuilderImpl<T> setLocation() {
         checkAlreadyInstalled();
-        final StackTraceElement element = new Throwable().getStackTrace()[1];
-        final String fileName = element.getFileName();
-        final int lineNumber = element.getLineNumber();
-        return setLocation(new Location(fileName, lineNumber, -1, null));
+        return setLocation(CallerLocations.caller());
     }
 
     @Override
@@ -141,6 +202,7 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     @Override
     public ServiceBuilder<T> addDependencies(final DependencyType dependencyType, final ServiceName... newDependencies) {
         checkAlreadyInstalled();
+        dependencies = ensureCapacity(dependencies, dependencyCount + newDependencies.length);
         for (ServiceName dependency : newDependencies) {
             if(!serviceName.equals(dependency)) {
                 doAddDependency(dependency, dependencyType);
@@ -177,6 +239,9 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     }
 
     ServiceBuilder<T> addDependenciesNoCheck(final Iterable<ServiceName> newDependencies, final DependencyType dependencyType) {
+        if (newDependencies instanceof Collection) {
+            dependencies = ensureCapacity(dependencies, dependencyCount + ((Collection<ServiceName>) newDependencies).size());
+        }
         for (ServiceName dependency : newDependencies) {
             if(!serviceName.equals(dependency)) {
                 doAddDependency(dependency, dependencyType);
@@ -219,7 +284,7 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     @Override
     public ServiceBuilder<T> addDependency(DependencyType dependencyType, final ServiceName dependency, final Injector<Object> target) {
         checkAlreadyInstalled();
-        doAddDependency(dependency, dependencyType).getInjectorList().add(target);
+        doAddDependency(dependency, dependencyType).addInjector(target);
         return this;
     }
 
@@ -237,21 +302,45 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     @Override
     public <I> ServiceBuilder<T> addDependency(final DependencyType dependencyType, final ServiceName dependency, final Class<I> type, final Injector<I> target) {
         checkAlreadyInstalled();
-        doAddDependency(dependency, dependencyType).getInjectorList().add(Injectors.cast(target, type));
+        doAddDependency(dependency, dependencyType).addInjector(Injectors.cast(target, type));
         return this;
     }
 
     private Dependency doAddDependency(final ServiceName name, final DependencyType type) {
-        final Dependency existing = dependencies.get(name);
+        final Dependency existing = findDependency(name);
         if (existing != null) {
             if (type == DependencyType.REQUIRED) existing.setDependencyType(DependencyType.REQUIRED);
             return existing;
         }
         final Dependency newDep = new Dependency(name, type);
-        dependencies.put(name, newDep);
+        final Dependency[] dependencies = ensureCapacity(this.dependencies, dependencyCount + 1);
+        this.dependencies = dependencies;
+        dependencies[dependencyCount++] = newDep;
+        if (dependencyIndex != null) {
+            dependencyIndex.put(name, newDep);
+        } else if (dependencyCount > MAX_LINEAR_SEARCH) {
+            final Map<ServiceName, Dependency> index = new HashMap<ServiceName, Dependency>(dependencyCount << 1);
+            for (int i = 0; i < dependencyCount; i++) {
+                index.put(dependencies[i].getName(), dependencies[i]);
+            }
+            dependencyIndex = index;
+        }
         return newDep;
     }
 
+    private Dependency findDependency(final ServiceName name) {
+        if (dependencyIndex != null) {
+            return dependencyIndex.get(name);
+        }
+        final Dependency[] dependencies = this.dependencies;
+        for (int i = 0; i < dependencyCount; i++) {
+            if (dependencies[i].getName().equals(name)) {
+                return dependencies[i];
+            }
+        }
+        return null;
+    }
+
     @Override
     public <I> ServiceBuilder<T> addInjection(final Injector<? super I> target, final I value) {
         return addInjectionValue(target, new ImmediateValue<I>(value));
@@ -260,30 +349,34 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     @Override
     public <I> ServiceBuilder<T> addInjectionValue(final Injector<? super I> target, final Value<I> value) {
         checkAlreadyInstalled();
-        valueInjections.add(new ValueInjection<I>(value, target));
+        final ValueInjection<?>[] valueInjections = ensureCapacity(this.valueInjections, valueInjectionCount + 1);
+        this.valueInjections = valueInjections;
+        valueInjections[valueInjectionCount++] = new ValueInjection<I>(value, target);
         return this;
     }
 
     @Override
     public ServiceBuilder<T> addInjection(final Injector<? super T> target) {
         checkAlreadyInstalled();
-        outInjections.add(target);
+        final Injector<? super T>[] outInjections = ensureCapacity(this.outInjections, outInjectionCount + 1);
+        this.outInjections = outInjections;
+        outInjections[outInjectionCount++] = target;
         return this;
     }
 
     @Override
     public ServiceBuilderImpl<T> addListener(final ServiceListener<? super T> listener) {
         checkAlreadyInstalled();
-        listeners.add(listener);
+        doAddListener(listener);
         return this;
     }
 
     @Override
     public ServiceBuilderImpl<T> addListener(final ServiceListener<? super T>... serviceListeners) {
         checkAlreadyInstalled();
+        listeners = ensureCapacity(listeners, listenerCount + serviceListeners.length);
         for (ServiceListener<? super T> listener : serviceListeners) {
-            final Set<ServiceListener<? super T>> listeners = this.listeners;
-            listeners.add(listener);
+            doAddListener(listener);
         }
         return this;
     }
@@ -295,10 +388,37 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     }
 
     ServiceBuilderImpl<T> addListenerNoCheck(final Collection<? extends ServiceListener<? super T>> serviceListeners) {
-        listeners.addAll(serviceListeners);
+        listeners = ensureCapacity(listeners, listenerCount + serviceListeners.size());
+        for (ServiceListener<? super T> listener : serviceListeners) {
+            doAddListener(listener);
+        }
         return this;
     }
 
+    private void doAddListener(final ServiceListener<? super T> listener) {
+        if (listenerIndex != null) {
+            if (! listenerIndex.add(listener)) {
+                return;
+            }
+        } else {
+            for (int i = 0; i < listenerCount; i++) {
+                if (listeners[i] == listener) {
+                    return;
+                }
+            }
+        }
+        final ServiceListener<? super T>[] listeners = ensureCapacity(this.listeners, listenerCount + 1);
+        this.listeners = listeners;
+        listeners[listenerCount++] = listener;
+        if (listenerIndex == null && listenerCount > MAX_LINEAR_SEARCH) {
+            final Set<ServiceListener<? super T>> index = new IdentityHashSet<ServiceListener<? super T>>(listenerCount << 1);
+            for (int i = 0; i < listenerCount; i++) {
+                index.add(listeners[i]);
+            }
+            listenerIndex = index;
+        }
+    }
+
     private void checkAlreadyInstalled() {
         if (installed) {
             throw new IllegalStateException("ServiceBuilder already installed");
@@ -307,13 +427,21 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
 
     @Override
     public ServiceController<T> install() throws ServiceRegistryException {
+        markInstalled();
+        return serviceTarget.install(this);
+    }
+
+    boolean isInstalled() {
+        return installed;
+    }
+
+    void markInstalled() {
         if (installed) {
             throw new IllegalStateException("ServiceBuilder is already installed");
         }
         // mark it before perform the installation,
         // so we avoid ServiceRegistryException being thrown multiple times
         installed = true;
-        return serviceTarget.install(this);
     }
 
     Value<? extends Service<T>> getServiceValue() {
@@ -325,19 +453,41 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     }
 
     ServiceName[] getAliases() {
-        return aliases.toArray(new ServiceName[aliases.size()]);
+        return trim(aliases, aliasCount);
+    }
+
+    Dependency[] getDependencies() {
+        return trim(dependencies, dependencyCount);
     }
 
-    Map<ServiceName, Dependency> getDependencies() {
-        return dependencies;
+    /**
+     * Get the distinct listeners.
+     *
+     * @return the listeners, in an array of exactly the right length
+     */
+    ServiceListener<? super T>[] getListeners() {
+        return trim(listeners, listenerCount);
     }
 
-    Set<? extends ServiceListener<? super T>> getListeners() {
-        return listeners;
+    /**
+     * Get the value injections, leaving room for more at the end.
+     *
+     * @param capacity the length of the returned array, no less than the number of value injections
+     * @return the value injections followed by {@code null}s
+     */
+    ValueInjection<?>[] getValueInjections(final int capacity) {
+        assert capacity >= valueInjectionCount;
+        final ValueInjection<?>[] valueInjections = this.valueInjections;
+        if (valueInjections.length == capacity) {
+            return valueInjections;
+        }
+        final ValueInjection<?>[] result = new ValueInjection<?>[capacity];
+        System.arraycopy(valueInjections, 0, result, 0, valueInjectionCount);
+        return result;
     }
 
-    List<ValueInjection<?>> getValueInjections() {
-        return valueInjections;
+    int getValueInjectionCount() {
+        return valueInjectionCount;
     }
 
     ServiceController.Mode getInitialMode() {
@@ -356,7 +506,7 @@ class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
         return parent;
     }
 
-    List<Injector<? super T>> getOutInjections() {
-        return outInjections;
+    Injector<? super T>[] getOutInjections() {
+        return trim(outInjections, outInjectionCount);
     }
 }
@@ -23,6 +23,9 @@
 package org.jboss.msc.service;
 
 import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -70,6 +73,42 @@ public interface ServiceContainer extends ServiceTarget, ServiceRegistry {
      */
     void awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
 
+    /**
+     * Change the mode of several services of this container at once.  This has the same effect as calling
+     * {@link ServiceController#setMode(ServiceController.Mode)} on each controller, but demand changes on shared
+     * dependencies are coalesced, which makes it much cheaper for large groups of services such as a whole
+     * deployment.  {@code null} elements are ignored.
+     *
+     * @param controllers the controllers of the services
+     * @param mode the new mode
+     * @throws IllegalArgumentException if a controller does not belong to this container, or if the container is
+     *      shutting down and the new mode is not {@link ServiceController.Mode#REMOVE REMOVE}
+     */
+    void setMode(Collection<? extends ServiceController<?>> controllers, ServiceController.Mode mode) throws IllegalArgumentException;
+
+    /**
+     * Change the mode of all the services under a name at once, as listed by {@link #getServices(ServiceName)}.  This
+     * is the same as {@link #setMode(Collection, ServiceController.Mode)} on those services; services installed under
+     * the name while this method runs may or may not be affected.
+     *
+     * @param parent the name
+     * @param mode the new mode
+     * @throws IllegalArgumentException if {@code parent} or {@code mode} is {@code null}, or if the container is shutting
+     *      down and the new mode is not {@link ServiceController.Mode#REMOVE REMOVE}
+     */
+    void setMode(ServiceName parent, ServiceController.Mode mode) throws IllegalArgumentException;
+
+    /**
+     * Run several service activators at once.  Each activator is given a {@link BatchServiceTarget} of its own, and
+     * the activators are run concurrently by the container's thread pool and the calling thread.  This method returns
+     * once every activator has returned; if an activator fails, the services it installed so far are removed again.
+     *
+     * @param activators the activators to run
+     * @return the failure of each activator which failed, or an empty map if all of them succeeded
+     * @throws IllegalArgumentException if {@code activators} is {@code null} or contains {@code null}
+     */
+    Map<ServiceActivator, Throwable> activate(Collection<? extends ServiceActivator> activators) throws IllegalArgumentException;
+
     /**
      * Dump a complete list of services to {@code System.out}.
      */
@@ -103,9 +142,7 @@ public interface ServiceContainer extends ServiceTarget, ServiceRegistry {
          * @return a new service container instance
          */
         public static ServiceContainer create() {
-            int cpuCount = Runtime.getRuntime().availableProcessors();
-            int coreSize = Math.max(cpuCount << 1, 2);
-            return new ServiceContainerImpl(null, coreSize, 30L, TimeUnit.SECONDS);
+            return new ServiceContainerImpl(new ServiceContainerConfiguration());
         }
 
         /**
@@ -115,9 +152,7 @@ public interface ServiceContainer extends ServiceTarget, ServiceRegistry {
          * @return a new service container instance
          */
         public static ServiceContainer create(String name) {
-            int cpuCount = Runtime.getRuntime().availableProcessors();
-            int coreSize = Math.max(cpuCount << 1, 2);
-            return new ServiceContainerImpl(name, coreSize, 30L, TimeUnit.SECONDS);
+            return new ServiceContainerImpl(new ServiceContainerConfiguration().setName(name));
         }
 
         /**
@@ -130,7 +165,7 @@ public interface ServiceContainer extends ServiceTarget, ServiceRegistry {
          * @return a new service container instance
          */
         public static ServiceContainer create(int coreSize, long keepAliveTime, TimeUnit keepAliveTimeUnit) {
-            return new ServiceContainerImpl(null, coreSize, keepAliveTime, keepAliveTimeUnit);
+            return new ServiceContainerImpl(new ServiceContainerConfiguration().setCoreSize(coreSize).setKeepAliveTime(keepAliveTime, keepAliveTimeUnit));
         }
 
         /**
@@ -144,7 +179,55 @@ public interface ServiceContainer extends ServiceTarget, ServiceRegistry {
          * @return a new service container instance
          */
         public static ServiceContainer create(String name, int coreSize, long keepAliveTime, TimeUnit keepAliveTimeUnit) {
-            return new ServiceContainerImpl(name, coreSize, keepAliveTime, keepAliveTimeUnit);
+            return new ServiceContainerImpl(new ServiceContainerConfiguration().setName(name).setCoreSize(coreSize).setKeepAliveTime(keepAliveTime, keepAliveTimeUnit));
+        }
+
+        /**
+         * Create a new instance with a generated name which runs its tasks on the given executor.
+         * <p>
+         * The container never shuts down the given executor; it is considered terminated once it has been shut down
+         * and all the tasks it submitted to {@code executor} have completed.  Tasks rejected by the executor are
+         * run by the submitting thread.
+         *
+         * @param executor the executor to use to run container tasks
+         * @return a new service container instance
+         */
+        public static ServiceContainer create(Executor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor is null");
+            }
+            return new ServiceContainerImpl(new ServiceContainerConfiguration().setExecutor(executor));
+        }
+
+        /**
+         * Create a new instance with a given name which runs its tasks on the given executor.
+         * <p>
+         * The container never shuts down the given executor; it is considered terminated once it has been shut down
+         * and all the tasks it submitted to {@code executor} have completed.  Tasks rejected by the executor are
+         * run by the submitting thread.
+         *
+         * @param name the name of the new container
+         * @param executor the executor to use to run container tasks
+         * @return a new service container instance
+         */
+        public static ServiceContainer create(String name, Executor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor is null");
+            }
+            return new ServiceContainerImpl(new ServiceContainerConfiguration().setName(name).setExecutor(executor));
+        }
+
+        /**
+         * Create a new instance with the given configuration.
+         *
+         * @param configuration the container configuration
+         * @return a new service container instance
+         */
+        public static ServiceContainer create(ServiceContainerConfiguration configuration) {
+            if (configuration == null) {
+                throw new IllegalArgumentException("configuration is null");
+            }
+            return new ServiceContainerImpl(configuration);
         }
     }
 
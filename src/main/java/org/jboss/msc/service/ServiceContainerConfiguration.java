@@ -0,0 +1,380 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The execution settings of a new {@link ServiceContainer}.  A container is created from a configuration by way of
+ * {@link ServiceContainer.Factory#create(ServiceContainerConfiguration)}; the settings are read at that time, so
+ * subsequent changes to a configuration do not affect containers which were already created.
+ * <p>
+ * Container tasks fall into three execution lanes: internal bookkeeping, service lifecycle methods and listener
+ * notifications.  Each lane may be given its own executor and concurrency limit; by default all of them run on the
+ * container executor without a limit.  The queue metrics of configured lanes are available from the container
+ * management bean.
+ */
+public final class ServiceContainerConfiguration {
+
+    private String name;
+    private int coreSize;
+    private long keepAliveTime = 30L;
+    private TimeUnit keepAliveTimeUnit = TimeUnit.SECONDS;
+    private int queueCapacity;
+    private Executor executor;
+    private boolean inlineInternalTasks;
+    private StartTaskScheduling startTaskScheduling = StartTaskScheduling.FIFO;
+    private Executor lifecycleExecutor;
+    private ThreadFactory lifecycleThreadFactory;
+    private int minLifecyclePoolSize;
+    private int maxLifecyclePoolSize;
+    private Executor listenerExecutor;
+    private int internalConcurrency;
+    private int lifecycleConcurrency;
+    private int listenerConcurrency;
+
+    /**
+     * Construct a new instance with a generated container name and the default thread pool settings.
+     */
+    public ServiceContainerConfiguration() {
+        final int cpuCount = Runtime.getRuntime().availableProcessors();
+        coreSize = Math.max(cpuCount << 1, 2);
+    }
+
+    /**
+     * Set the name of the container, or {@code null} to generate one.
+     *
+     * @param name the container name
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setName(final String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Set the core size of the container thread pool.  Ignored if an {@link #setExecutor(Executor) executor} is
+     * given.
+     *
+     * @param coreSize the core pool size (must be greater than zero)
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setCoreSize(final int coreSize) {
+        if (coreSize < 1) {
+            throw new IllegalArgumentException("coreSize must be greater than zero");
+        }
+        this.coreSize = coreSize;
+        return this;
+    }
+
+    /**
+     * Set the amount of time that non-core threads of the container thread pool should linger without tasks.
+     * Ignored if an {@link #setExecutor(Executor) executor} is given.
+     *
+     * @param keepAliveTime the keep-alive time
+     * @param keepAliveTimeUnit the time unit for {@code keepAliveTime}
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setKeepAliveTime(final long keepAliveTime, final TimeUnit keepAliveTimeUnit) {
+        if (keepAliveTimeUnit == null) {
+            throw new IllegalArgumentException("keepAliveTimeUnit is null");
+        }
+        this.keepAliveTime = keepAliveTime;
+        this.keepAliveTimeUnit = keepAliveTimeUnit;
+        return this;
+    }
+
+    /**
+     * Set the capacity of the task queue of the container thread pool.  While the queue is full, threads which
+     * install services or change service modes wait for it to drain before going ahead, which keeps the number of
+     * pending tasks, and the memory they hold on to, flat during a mass deployment.  Tasks submitted by the
+     * container itself are always queued, so the capacity is a threshold rather than a hard limit.  Ignored if an
+     * {@link #setExecutor(Executor) executor} is given.
+     *
+     * @param queueCapacity the maximum number of queued tasks, or 0 for an unbounded queue
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setQueueCapacity(final int queueCapacity) {
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("queueCapacity must not be negative");
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Set the executor which runs the container tasks, or {@code null} to have the container create and own its
+     * thread pool.  See {@link ServiceContainer.Factory#create(String, Executor)} for the semantics of a
+     * user-supplied executor.
+     *
+     * @param executor the executor
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setExecutor(final Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Establish whether internal bookkeeping tasks (such as the propagation of demands and of dependency state
+     * changes) submitted while another internal task is running should be run on the same thread once that task
+     * completes, instead of being submitted to the executor.  At most a small, fixed number of tasks is deferred
+     * this way; any further tasks, as well as service start and stop tasks and listener notifications, are always
+     * submitted to the executor.
+     *
+     * @param inlineInternalTasks {@code true} to run internal tasks inline
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setInlineInternalTasks(final boolean inlineInternalTasks) {
+        this.inlineInternalTasks = inlineInternalTasks;
+        return this;
+    }
+
+    /**
+     * Set the order in which pending service start tasks are run.
+     *
+     * @param startTaskScheduling the start task scheduling policy
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setStartTaskScheduling(final StartTaskScheduling startTaskScheduling) {
+        if (startTaskScheduling == null) {
+            throw new IllegalArgumentException("startTaskScheduling is null");
+        }
+        this.startTaskScheduling = startTaskScheduling;
+        return this;
+    }
+
+    /**
+     * Set the executor which runs service start and stop methods and tasks submitted through a
+     * {@link LifecycleContext}, or {@code null} to run them on the container executor.  The container never shuts
+     * down the given executor.  Setting a lifecycle executor clears any
+     * {@link #setLifecycleThreadFactory(ThreadFactory) lifecycle thread factory} and
+     * {@link #setAdaptiveLifecyclePool(int, int) adaptive lifecycle pool}.
+     *
+     * @param lifecycleExecutor the lifecycle executor
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setLifecycleExecutor(final Executor lifecycleExecutor) {
+        this.lifecycleExecutor = lifecycleExecutor;
+        if (lifecycleExecutor != null) {
+            lifecycleThreadFactory = null;
+            minLifecyclePoolSize = maxLifecyclePoolSize = 0;
+        }
+        return this;
+    }
+
+    /**
+     * Set a thread factory from which a new thread is created for every service start and stop method and every
+     * task submitted through a {@link LifecycleContext}, or {@code null} to run them on the container executor.
+     * Internal bookkeeping tasks stay on the container executor, so services which block in their start or stop
+     * methods no longer hold up the container thread pool, however many of them are in flight.
+     * <p>
+     * This is intended for use with a factory of lightweight threads, such as the virtual thread factory returned
+     * by {@code Thread.ofVirtual().factory()} on runtimes which provide one.  Setting a lifecycle thread factory
+     * clears any {@link #setLifecycleExecutor(Executor) lifecycle executor} and
+     * {@link #setAdaptiveLifecyclePool(int, int) adaptive lifecycle pool}; a
+     * {@link #setLifecycleConcurrency(int) lifecycle concurrency} limit still applies.
+     *
+     * @param lifecycleThreadFactory the lifecycle thread factory
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setLifecycleThreadFactory(final ThreadFactory lifecycleThreadFactory) {
+        this.lifecycleThreadFactory = lifecycleThreadFactory;
+        if (lifecycleThreadFactory != null) {
+            lifecycleExecutor = null;
+            minLifecyclePoolSize = maxLifecyclePoolSize = 0;
+        }
+        return this;
+    }
+
+    /**
+     * Run service start and stop methods and tasks submitted through a {@link LifecycleContext} on a dedicated
+     * thread pool of the container, whose size adapts to the observed lifecycle tasks.  The pool starts with
+     * {@code minSize} threads.  While work is queued, it grows if the tasks spend most of their time blocked (their
+     * wall clock time far exceeds their CPU time) or if there are fewer threads than processors, and shrinks back
+     * towards the number of processors while the tasks are CPU-bound; once nothing is queued it shrinks back towards
+     * {@code minSize}.  The size is kept within the given bounds.  If the JVM cannot measure thread CPU time, the pool
+     * keeps its initial size.
+     * <p>
+     * Setting an adaptive lifecycle pool clears any {@link #setLifecycleExecutor(Executor) lifecycle executor} and
+     * {@link #setLifecycleThreadFactory(ThreadFactory) lifecycle thread factory}.
+     *
+     * @param minSize the minimum number of lifecycle threads (must be greater than zero)
+     * @param maxSize the maximum number of lifecycle threads (must not be less than {@code minSize})
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setAdaptiveLifecyclePool(final int minSize, final int maxSize) {
+        if (minSize < 1) {
+            throw new IllegalArgumentException("minSize must be greater than zero");
+        }
+        if (maxSize < minSize) {
+            throw new IllegalArgumentException("maxSize must not be less than minSize");
+        }
+        minLifecyclePoolSize = minSize;
+        maxLifecyclePoolSize = maxSize;
+        lifecycleExecutor = null;
+        lifecycleThreadFactory = null;
+        return this;
+    }
+
+    /**
+     * Set the executor which delivers notifications to service listeners, or {@code null} to deliver them on the
+     * container executor.  The container never shuts down the given executor.
+     *
+     * @param listenerExecutor the listener executor
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setListenerExecutor(final Executor listenerExecutor) {
+        this.listenerExecutor = listenerExecutor;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of internal bookkeeping tasks which may run at a time.
+     *
+     * @param internalConcurrency the maximum number of tasks, or 0 for no limit
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setInternalConcurrency(final int internalConcurrency) {
+        this.internalConcurrency = checkConcurrency(internalConcurrency);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of service lifecycle tasks (such as service start and stop methods) which may run at
+     * a time.  Limiting the lifecycle tasks keeps services which block in their start methods from occupying all
+     * the threads of a shared executor.
+     *
+     * @param lifecycleConcurrency the maximum number of tasks, or 0 for no limit
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setLifecycleConcurrency(final int lifecycleConcurrency) {
+        this.lifecycleConcurrency = checkConcurrency(lifecycleConcurrency);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of service listener notifications which may run at a time.
+     *
+     * @param listenerConcurrency the maximum number of tasks, or 0 for no limit
+     * @return this configuration
+     */
+    public ServiceContainerConfiguration setListenerConcurrency(final int listenerConcurrency) {
+        this.listenerConcurrency = checkConcurrency(listenerConcurrency);
+        return this;
+    }
+
+    private static int checkConcurrency(final int concurrency) {
+        if (concurrency < 0) {
+            throw new IllegalArgumentException("Concurrency limit must not be negative");
+        }
+        return concurrency;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getCoreSize() {
+        return coreSize;
+    }
+
+    long getKeepAliveTime() {
+        return keepAliveTime;
+    }
+
+    TimeUnit getKeepAliveTimeUnit() {
+        return keepAliveTimeUnit;
+    }
+
+    int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    boolean isInlineInternalTasks() {
+        return inlineInternalTasks;
+    }
+
+    StartTaskScheduling getStartTaskScheduling() {
+        return startTaskScheduling;
+    }
+
+    Executor getLifecycleExecutor() {
+        return lifecycleExecutor;
+    }
+
+    ThreadFactory getLifecycleThreadFactory() {
+        return lifecycleThreadFactory;
+    }
+
+    int getMinLifecyclePoolSize() {
+        return minLifecyclePoolSize;
+    }
+
+    int getMaxLifecyclePoolSize() {
+        return maxLifecyclePoolSize;
+    }
+
+    Executor getListenerExecutor() {
+        return listenerExecutor;
+    }
+
+    int getInternalConcurrency() {
+        return internalConcurrency;
+    }
+
+    int getLifecycleConcurrency() {
+        return lifecycleConcurrency;
+    }
+
+    int getListenerConcurrency() {
+        return listenerConcurrency;
+    }
+
+    /**
+     * The order in which pending service start tasks are run.
+     */
+    public enum StartTaskScheduling {
+        /**
+         * Start tasks are run in the order in which they were submitted.
+         */
+        FIFO,
+        /**
+         * Start tasks of services with more (transitive) dependents are run first, so that the services on the
+         * critical path of a large boot are not held up by services which nothing waits on.  The dependents of a
+         * service are counted up to a fixed bound when its start task is submitted.
+         */
+        CRITICAL_PATH,
+        /**
+         * Like {@link #CRITICAL_PATH}, but each dependent is weighted by the time it took to start the last time a
+         * service with the same name was started in the container.
+         */
+        WEIGHTED_CRITICAL_PATH,
+    }
+}
@@ -34,25 +34,29 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -63,8 +67,10 @@ import org.jboss.modules.ref.Reference;
 import org.jboss.modules.ref.WeakReference;
 import org.jboss.msc.Version;
 import org.jboss.msc.inject.Injector;
+import org.jboss.msc.service.ServiceContainerConfiguration.StartTaskScheduling;
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.ServiceControllerImpl.Substate;
+import org.jboss.msc.service.management.ExecutionLaneStatus;
 import org.jboss.msc.service.management.ServiceContainerMXBean;
 import org.jboss.msc.service.management.ServiceStatus;
 import org.jboss.msc.value.InjectedValue;
@@ -91,6 +97,8 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
     }
 
     private final ConcurrentMap<ServiceName, ServiceRegistrationImpl> registry = new UnlockedReadHashMap<ServiceName, ServiceRegistrationImpl>(512);
+    private final TopologicalOrder topologicalOrder = new TopologicalOrder(registry.values());
+    private final ServiceNameIndex nameIndex = new ServiceNameIndex();
 
     private final long start = System.nanoTime();
     private long shutdownInitiated;
@@ -149,7 +157,32 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
 
     private volatile boolean down = false;
 
-    private final ContainerExecutor executor;
+    private final Executor executor;
+    private final Executor internalExecutor;
+    private final Executor lifecycleExecutor;
+    private final AdaptiveLifecyclePool lifecyclePool;
+    private final Executor listenerExecutor;
+    private final ExecutionLane[] lanes;
+    /**
+     * The number of container tasks outstanding on user-supplied executors or queued in execution lanes, plus one
+     * until the container has been shut down.  Once it drops to zero, the container's own thread pool, if it has one,
+     * is shut down, and the container terminates when that pool does.
+     */
+    private final AtomicInteger outstandingTasks = new AtomicInteger(1);
+    private final boolean inlineInternalTasks;
+    private final StartTaskScheduling startTaskScheduling;
+    /**
+     * The pending start tasks, highest priority first, if start tasks are not run in FIFO order.
+     */
+    private final PriorityBlockingQueue<PrioritizedTask> startTasks;
+    private final AtomicLong startTaskSeq = new AtomicLong();
+    /**
+     * The time, in nanoseconds, it took each service to start the last time, by name, if start tasks are weighted by
+     * it.  It is kept here rather than on the registration, so that it survives the service being removed and
+     * installed again; the least recently started names are dropped beyond {@link #MAX_START_TIMES}.
+     */
+    private final Map<ServiceName, Long> startTimes;
+    private static final int MAX_START_TIMES = 8192;
 
     private final String name;
     private final MBeanServer mBeanServer;
@@ -202,6 +235,25 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
             }
         }
 
+        public List<ExecutionLaneStatus> queryExecutionLaneStatuses() {
+            return Arrays.asList(getExecutionLaneStatuses());
+        }
+
+        public int getQueueSize() {
+            final Executor executor = ServiceContainerImpl.this.executor;
+            return executor instanceof ContainerExecutor ? ((ContainerExecutor) executor).getQueue().size() : -1;
+        }
+
+        public int getPeakQueueSize() {
+            final Executor executor = ServiceContainerImpl.this.executor;
+            return executor instanceof ContainerExecutor ? ((ContainerExecutor) executor).getPeakQueueSize() : -1;
+        }
+
+        public int getLifecyclePoolSize() {
+            final AdaptiveLifecyclePool lifecyclePool = ServiceContainerImpl.this.lifecyclePool;
+            return lifecyclePool == null ? -1 : lifecyclePool.getCorePoolSize();
+        }
+
         public void dumpServices() {
             ServiceContainerImpl.this.dumpServices();
         }
@@ -224,14 +276,49 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
         }
     };
 
-    ServiceContainerImpl(String name, int coreSize, long timeOut, TimeUnit timeOutUnit) {
+    ServiceContainerImpl(final ServiceContainerConfiguration configuration) {
         super(null);
         final int serialNo = SERIAL.getAndIncrement();
+        String name = configuration.getName();
         if (name == null) {
             name = String.format("anonymous-%d", Integer.valueOf(serialNo));
         }
         this.name = name;
-        executor = new ContainerExecutor(coreSize, coreSize, timeOut, timeOutUnit);
+        final Executor executor = configuration.getExecutor();
+        if (executor == null) {
+            final int coreSize = configuration.getCoreSize();
+            this.executor = new ContainerExecutor(coreSize, coreSize, configuration.getKeepAliveTime(), configuration.getKeepAliveTimeUnit(), configuration.getQueueCapacity());
+        } else {
+            this.executor = new DelegatingExecutor(executor);
+        }
+        final List<ExecutionLane> lanes = new ArrayList<ExecutionLane>(3);
+        internalExecutor = createLane("internal", null, configuration.getInternalConcurrency(), lanes);
+        final ThreadFactory lifecycleThreadFactory = configuration.getLifecycleThreadFactory();
+        final int minLifecyclePoolSize = configuration.getMinLifecyclePoolSize();
+        final Executor lifecycleLaneExecutor;
+        if (lifecycleThreadFactory != null) {
+            lifecyclePool = null;
+            lifecycleLaneExecutor = new ThreadPerTaskExecutor(lifecycleThreadFactory);
+        } else if (minLifecyclePoolSize > 0) {
+            lifecyclePool = new AdaptiveLifecyclePool(minLifecyclePoolSize, configuration.getMaxLifecyclePoolSize(), configuration.getKeepAliveTime(), configuration.getKeepAliveTimeUnit());
+            lifecycleLaneExecutor = lifecyclePool;
+        } else {
+            lifecyclePool = null;
+            lifecycleLaneExecutor = configuration.getLifecycleExecutor();
+        }
+        lifecycleExecutor = createLane("lifecycle", lifecycleLaneExecutor, configuration.getLifecycleConcurrency(), lanes);
+        listenerExecutor = createLane("listener", configuration.getListenerExecutor(), configuration.getListenerConcurrency(), lanes);
+        this.lanes = lanes.toArray(new ExecutionLane[lanes.size()]);
+        inlineInternalTasks = configuration.isInlineInternalTasks();
+        startTaskScheduling = configuration.getStartTaskScheduling();
+        startTasks = startTaskScheduling == StartTaskScheduling.FIFO ? null : new PriorityBlockingQueue<PrioritizedTask>();
+        startTimes = startTaskScheduling != StartTaskScheduling.WEIGHTED_CRITICAL_PATH ? null : new LinkedHashMap<ServiceName, Long>(16, 0.75f, false) {
+            private static final long serialVersionUID = 6071856393316420284L;
+
+            protected boolean removeEldestEntry(final Map.Entry<ServiceName, Long> eldest) {
+                return size() > MAX_START_TIMES;
+            }
+        };
         ObjectName objectName = null;
         MBeanServer mBeanServer = null;
         try {
@@ -268,6 +355,14 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
                 }));
             }
         }
+        if (lifecyclePool != null) {
+            // the lifecycle tasks are counted by the lane, so the pool can go once the container has terminated
+            addTerminateListener(new TerminateListener() {
+                public void handleTermination(final Info info) {
+                    lifecyclePool.shutdown();
+                }
+            });
+        }
         if (objectName != null && mBeanServer != null) {
             addTerminateListener(new TerminateListener() {
                 public void handleTermination(final Info info) {
@@ -280,10 +375,47 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
         }
     }
 
+    private Executor createLane(final String name, final Executor laneExecutor, final int maxConcurrency, final List<ExecutionLane> lanes) {
+        if (laneExecutor == null && maxConcurrency == 0) {
+            return executor;
+        }
+        final ExecutionLane lane = new ExecutionLane(this, name, laneExecutor == null ? executor : new DelegatingExecutor(laneExecutor), maxConcurrency);
+        lanes.add(lane);
+        return lane;
+    }
+
     public String getName() {
         return name;
     }
 
+    public void setMode(final Collection<? extends ServiceController<?>> controllers, final ServiceController.Mode mode) throws IllegalArgumentException {
+        if (controllers == null) {
+            throw new IllegalArgumentException("controllers is null");
+        }
+        if (mode == null) {
+            throw new IllegalArgumentException("mode is null");
+        }
+        awaitQueueCapacity();
+        ServiceControllerImpl.setModes(this, controllers, mode);
+    }
+
+    public void setMode(final ServiceName parent, final ServiceController.Mode mode) throws IllegalArgumentException {
+        if (parent == null) {
+            throw new IllegalArgumentException("parent is null");
+        }
+        setMode(nameIndex.getServices(parent), mode);
+    }
+
+    public Map<ServiceActivator, Throwable> activate(final Collection<? extends ServiceActivator> activators) throws IllegalArgumentException {
+        final List<ServiceActivator> list = ServiceActivators.check(activators);
+        final Executor executor = this.executor;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (executor instanceof ThreadPoolExecutor) {
+            parallelism = Math.min(parallelism, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+        }
+        return ServiceActivators.activate(list, this, this, executor, parallelism);
+    }
+
     Writer getProfileOutput() {
         return profileOutput;
     }
@@ -336,7 +468,7 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
         }
         shutdownListener = MultipleRemoveListener.create(new Runnable() {
             public void run() {
-                executor.shutdown();
+                outstandingTaskComplete();
             }
         });
         final HashSet<ServiceControllerImpl<?>> done = new HashSet<ServiceControllerImpl<?>>();
@@ -418,25 +550,285 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
     }
 
     /**
-     * Atomically get or create a registration.
+     * Execute an internal bookkeeping task of a controller.  If inline execution of internal tasks is enabled and the
+     * current thread is running an internal task of this container, the task is deferred until that task completes
+     * and is then run on the current thread, as long as no more than {@link #MAX_DEFERRED_TASKS} tasks are already
+     * deferred.
+     *
+     * @param task the task to execute
+     */
+    void executeInternalTask(final Runnable task) {
+        if (inlineInternalTasks) {
+            final DeferredTasks deferredTasks = DEFERRED_TASKS.get();
+            if (deferredTasks.container == this && deferredTasks.tasks.size() < MAX_DEFERRED_TASKS) {
+                deferredTasks.tasks.add(task);
+            } else {
+                internalExecutor.execute(new InternalTaskRunner(task));
+            }
+        } else {
+            internalExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Wait until the container thread pool can take more tasks, if its queue capacity is limited.  This must only
+     * be called from entry points which hold no locks.
+     */
+    void awaitQueueCapacity() {
+        final Executor executor = this.executor;
+        if (executor instanceof ContainerExecutor) {
+            ((ContainerExecutor) executor).awaitQueueCapacity();
+        }
+    }
+
+    /**
+     * Execute a task which runs service lifecycle code, such as a stop task or a task submitted through a
+     * {@link LifecycleContext}.
+     *
+     * @param task the task to execute
+     */
+    void executeLifecycleTask(final Runnable task) {
+        lifecycleExecutor.execute(task);
+    }
+
+    /**
+     * Execute a task which notifies a service listener.
+     *
+     * @param task the task to execute
+     */
+    void executeListenerTask(final Runnable task) {
+        listenerExecutor.execute(task);
+    }
+
+    ExecutionLaneStatus[] getExecutionLaneStatuses() {
+        final ExecutionLane[] lanes = this.lanes;
+        final ExecutionLaneStatus[] statuses = new ExecutionLaneStatus[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            statuses[i] = lanes[i].getStatus();
+        }
+        return statuses;
+    }
+
+    /**
+     * Execute the start task of a controller, according to the start task scheduling policy.
+     *
+     * @param task the start task
+     * @param controller the controller
+     */
+    void executeStartTask(final Runnable task, final ServiceControllerImpl<?> controller) {
+        final PriorityBlockingQueue<PrioritizedTask> startTasks = this.startTasks;
+        if (startTasks == null) {
+            executeLifecycleTask(task);
+            return;
+        }
+        final long priority = controller.getStartPriority(startTaskScheduling == StartTaskScheduling.WEIGHTED_CRITICAL_PATH);
+        startTasks.add(new PrioritizedTask(task, priority, startTaskSeq.getAndIncrement()));
+        try {
+            lifecycleExecutor.execute(startTaskRunner);
+        } catch (RejectedExecutionException e) {
+            // each queued task is matched by one submitted runner, so run one here instead
+            startTaskRunner.run();
+        }
+    }
+
+    boolean isRecordingStartTimes() {
+        return startTimes != null;
+    }
+
+    /**
+     * Get the time it took a service to start the last time.
+     *
+     * @param name the service name
+     * @return the start time in nanoseconds, or -1 if it is unknown or start times are not recorded
+     */
+    long getLastStartTime(final ServiceName name) {
+        final Map<ServiceName, Long> startTimes = this.startTimes;
+        if (startTimes == null) {
+            return -1L;
+        }
+        final Long startTime;
+        synchronized (startTimes) {
+            startTime = startTimes.get(name);
+        }
+        return startTime == null ? -1L : startTime.longValue();
+    }
+
+    /**
+     * Record the time it took a service to start, if start times are recorded.
+     *
+     * @param name the service name
+     * @param startTime the start time in nanoseconds
+     */
+    void setLastStartTime(final ServiceName name, final long startTime) {
+        final Map<ServiceName, Long> startTimes = this.startTimes;
+        if (startTimes != null) {
+            synchronized (startTimes) {
+                // re-insert so that the name counts as recently started
+                startTimes.remove(name);
+                startTimes.put(name, Long.valueOf(startTime));
+            }
+        }
+    }
+
+    /**
+     * Runs the pending start task with the highest priority.
+     */
+    private final Runnable startTaskRunner = new Runnable() {
+        public void run() {
+            final PrioritizedTask task = startTasks.poll();
+            if (task != null) {
+                task.task.run();
+            }
+        }
+    };
+
+    static final class PrioritizedTask implements Comparable<PrioritizedTask> {
+        private final Runnable task;
+        private final long priority;
+        private final long seq;
+
+        PrioritizedTask(final Runnable task, final long priority, final long seq) {
+            this.task = task;
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        public int compareTo(final PrioritizedTask o) {
+            // higher priority first, then FIFO
+            if (priority != o.priority) {
+                return priority > o.priority ? -1 : 1;
+            }
+            return seq < o.seq ? -1 : seq == o.seq ? 0 : 1;
+        }
+    }
+
+    private static final int MAX_DEFERRED_TASKS = 64;
+
+    private static final ThreadLocal<DeferredTasks> DEFERRED_TASKS = new ThreadLocal<DeferredTasks>() {
+        protected DeferredTasks initialValue() {
+            return new DeferredTasks();
+        }
+    };
+
+    /**
+     * The internal tasks deferred by the internal task which is running on the current thread.
+     */
+    static final class DeferredTasks {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>(MAX_DEFERRED_TASKS);
+        /**
+         * The container whose internal task is running, or {@code null} if none is.
+         */
+        private ServiceContainerImpl container;
+    }
+
+    /**
+     * Runs an internal task followed by all the internal tasks deferred while running it.
+     */
+    final class InternalTaskRunner implements Runnable {
+
+        private final Runnable task;
+
+        InternalTaskRunner(final Runnable task) {
+            this.task = task;
+        }
+
+        public void run() {
+            final DeferredTasks deferredTasks = DEFERRED_TASKS.get();
+            if (deferredTasks.container != null) {
+                // the task was rejected and is being run by a thread which is itself running an internal task
+                runInternalTask(task);
+                return;
+            }
+            deferredTasks.container = ServiceContainerImpl.this;
+            try {
+                Runnable next = task;
+                do {
+                    runInternalTask(next);
+                } while ((next = deferredTasks.tasks.poll()) != null);
+            } finally {
+                deferredTasks.container = null;
+            }
+        }
+    }
+
+    private static void runInternalTask(final Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            HANDLER.uncaughtException(Thread.currentThread(), t);
+        }
+    }
+
+    /**
+     * Atomically get or create a registration, and pin it so that it is not reclaimed before the installation using
+     * it has linked to it.  The pin must be released with {@link #release(ServiceRegistrationImpl)}.
      *
      * @param name the service name
      * @return the registration
      */
     private ServiceRegistrationImpl getOrCreateRegistration(final ServiceName name) {
         final ConcurrentMap<ServiceName, ServiceRegistrationImpl> registry = this.registry;
-        ServiceRegistrationImpl registration;
-        registration = registry.get(name);
-        if (registration == null) {
-            registration = new ServiceRegistrationImpl(this, name);
-            ServiceRegistrationImpl existing = registry.putIfAbsent(name, registration);
-            if(existing != null) {
-                return existing;
-            } else {
+        for (;;) {
+            ServiceRegistrationImpl registration;
+            registration = registry.get(name);
+            if (registration == null) {
+                registration = new ServiceRegistrationImpl(this, name);
+                registration.pin();
+                ServiceRegistrationImpl existing = registry.putIfAbsent(name, registration);
+                if(existing == null) {
+                    nameIndex.add(registration);
+                    return registration;
+                }
+                registration = existing;
+            }
+            if (registration.pin()) {
                 return registration;
             }
-        } else {
-            return registration;
+            // reclaimed concurrently; make sure it is gone before looking again
+            registry.remove(name, registration);
+        }
+    }
+
+    /**
+     * Release a registration pinned by {@link #getOrCreateRegistration(ServiceName)}, and reclaim it if it is no
+     * longer used.
+     *
+     * @param registration the registration
+     */
+    private void release(final ServiceRegistrationImpl registration) {
+        if (registration.unpin() && registration.getInstance() == null) {
+            reclaim(registration);
+        }
+    }
+
+    /**
+     * Remove a registration from the registry if it has no instance, no dependents and no demands, so that names
+     * which were only ever depended upon, or whose services were removed, do not accumulate.
+     *
+     * @param registration the registration
+     */
+    void reclaim(final ServiceRegistrationImpl registration) {
+        if (registration.reclaim()) {
+            registry.remove(registration.getName(), registration);
+            nameIndex.remove(registration);
+        }
+    }
+
+    /**
+     * Release the registrations pinned for the installation of {@code instance}.
+     *
+     * @param instance the service being installed
+     */
+    private void releaseRegistrations(final ServiceControllerImpl<?> instance) {
+        release(instance.getPrimaryRegistration());
+        for (ServiceRegistrationImpl registration : instance.getAliasRegistrations()) {
+            release(registration);
+        }
+        for (Dependency dependency : instance.getDependencyArray()) {
+            while (dependency instanceof OptionalDependency) {
+                dependency = ((OptionalDependency) dependency).getOptionalDependency();
+            }
+            release((ServiceRegistrationImpl) dependency);
         }
     }
 
@@ -455,6 +847,14 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
         return registration == null ? null : registration.getInstance();
     }
 
+    @Override
+    public List<ServiceController<?>> getServices(final ServiceName parent) {
+        if (parent == null) {
+            throw new IllegalArgumentException("parent is null");
+        }
+        return nameIndex.getServices(parent);
+    }
+
     @Override
     public List<ServiceName> getServiceNames() {
         final List<ServiceName> result = new ArrayList<ServiceName>(registry.size());
@@ -471,8 +871,75 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
         if (down) {
             throw new IllegalStateException ("Container is down");
         }
+        awaitQueueCapacity();
         apply(serviceBuilder);
+        final ServiceControllerImpl<T> instance = createController(serviceBuilder);
+        boolean ok = false;
+        try {
+            instance.startInstallation();
+            // detect circularity before committing
+            detectCircularity(instance);
+            instance.commitInstallation(serviceBuilder.getInitialMode());
+            ok = true;
+            return instance;
+        } finally {
+            if (! ok) {
+                instance.rollbackInstallation();
+            }
+            releaseRegistrations(instance);
+        }
+    }
+
+    @Override
+    List<ServiceController<?>> installAll(final List<ServiceBuilderImpl<?>> serviceBuilders) throws DuplicateServiceException {
+        if (down) {
+            throw new IllegalStateException ("Container is down");
+        }
+        awaitQueueCapacity();
+        final int size = serviceBuilders.size();
+        final List<ServiceControllerImpl<?>> instances = new ArrayList<ServiceControllerImpl<?>>(size);
+        for (ServiceBuilderImpl<?> serviceBuilder : serviceBuilders) {
+            apply(serviceBuilder);
+        }
+        int started = 0;
+        boolean ok = false;
+        try {
+            for (ServiceBuilderImpl<?> serviceBuilder : serviceBuilders) {
+                instances.add(createController(serviceBuilder));
+            }
+            for (ServiceControllerImpl<?> instance : instances) {
+                started ++;
+                instance.startInstallation();
+            }
+            // detect circularity once for the whole batch before committing any of it
+            final ServiceControllerImpl<?> cyclic = topologicalOrder.insertAll(instances);
+            if (cyclic != null) {
+                throw new CircularDependencyException("Service " + cyclic.getName() + " has a circular dependency");
+            }
+            ok = true;
+            for (int i = 0; i < size; i ++) {
+                instances.get(i).commitInstallation(serviceBuilders.get(i).getInitialMode());
+            }
+        } finally {
+            if (! ok) {
+                while (started > 0) {
+                    instances.get(-- started).rollbackInstallation();
+                }
+            }
+            for (ServiceControllerImpl<?> instance : instances) {
+                releaseRegistrations(instance);
+            }
+        }
+        return new ArrayList<ServiceController<?>>(instances);
+    }
 
+    /**
+     * Create the controller of a service and its registrations, without installing it.
+     *
+     * @param serviceBuilder the service builder
+     * @return the new controller
+     */
+    private <T> ServiceControllerImpl<T> createController(final ServiceBuilderImpl<T> serviceBuilder) {
         // Get names & aliases
         final ServiceName name = serviceBuilder.getName();
         final ServiceName[] aliases = serviceBuilder.getAliases();
@@ -487,53 +954,43 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
         }
 
         // Create the list of dependencies
-        final Map<ServiceName, ServiceBuilderImpl.Dependency> dependencyMap = serviceBuilder.getDependencies();
-        final int dependencyCount = dependencyMap.size();
+        final ServiceBuilderImpl.Dependency[] builderDependencies = serviceBuilder.getDependencies();
+        final int dependencyCount = builderDependencies.length;
         final Dependency[] dependencies = new Dependency[dependencyCount];
-        final List<ValueInjection<?>> valueInjections = serviceBuilder.getValueInjections();
-        final List<ValueInjection<?>> outInjections = new ArrayList<ValueInjection<?>>();
         // set up outInjections with an InjectedValue
         final InjectedValue<T> serviceValue = new InjectedValue<T>();
-        for (final Injector<? super T> outInjection : serviceBuilder.getOutInjections()) {
-            outInjections.add(new ValueInjection<T>(serviceValue, outInjection));
+        final Injector<? super T>[] builderOutInjections = serviceBuilder.getOutInjections();
+        final ValueInjection<?>[] outInjectionArray = new ValueInjection<?>[builderOutInjections.length];
+        for (int i = 0; i < builderOutInjections.length; i++) {
+            outInjectionArray[i] = new ValueInjection<T>(serviceValue, builderOutInjections[i]);
         }
 
-        // Dependencies
-        int i = 0;
-        for (ServiceName serviceName : dependencyMap.keySet()) {
-            Dependency registration = getOrCreateRegistration(serviceName);
-            final ServiceBuilderImpl.Dependency dependency = dependencyMap.get(serviceName);
+        // Dependencies, with their injections following the builder's own value injections
+        int injectionCount = serviceBuilder.getValueInjectionCount();
+        for (ServiceBuilderImpl.Dependency dependency : builderDependencies) {
+            injectionCount += dependency.getInjectorList().size();
+        }
+        final ValueInjection<?>[] valueInjectionArray = serviceBuilder.getValueInjections(injectionCount);
+        int injectionIndex = serviceBuilder.getValueInjectionCount();
+        for (int i = 0; i < dependencyCount; i++) {
+            final ServiceBuilderImpl.Dependency dependency = builderDependencies[i];
+            Dependency registration = getOrCreateRegistration(dependency.getName());
             if (dependency.getDependencyType() == ServiceBuilder.DependencyType.OPTIONAL) {
                 registration = new OptionalDependency(registration);
             }
-            dependencies[i++] = registration;
+            dependencies[i] = registration;
             for (Injector<Object> injector : dependency.getInjectorList()) {
-                valueInjections.add(new ValueInjection<Object>(registration, injector));
+                valueInjectionArray[injectionIndex++] = new ValueInjection<Object>(registration, injector);
             }
         }
-        final ValueInjection<?>[] valueInjectionArray = valueInjections.toArray(new ValueInjection<?>[valueInjections.size()]);
-        final ValueInjection<?>[] outInjectionArray = outInjections.toArray(new ValueInjection<?>[outInjections.size()]);
 
         // Next create the actual controller
         final ServiceControllerImpl<T> instance = new ServiceControllerImpl<T>(serviceBuilder.getServiceValue(),
                 serviceBuilder.getLocation(), dependencies, valueInjectionArray, outInjectionArray, primaryRegistration, aliasRegistrations,
                 serviceBuilder.getListeners(), serviceBuilder.getParent());
-        boolean ok = false;
-        try {
-            serviceValue.setValue(instance);
-            instance.startInstallation();
-            // detect circularity before committing
-            detectCircularity(instance);
-            instance.commitInstallation(serviceBuilder.getInitialMode());
-            ok = true;
-            return instance;
-        } finally {
-            if (! ok) {
-                instance.rollbackInstallation();
-            }
-        }
+        serviceValue.setValue(instance);
+        return instance;
     }
-
     /**
      * Detects if installation of {@code instance} results in dependency cycles.
      *
@@ -541,60 +998,18 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
      * @throws CircularDependencyException if a dependency cycle involving {@code instance} is detected
      */
     private <T> void detectCircularity(ServiceControllerImpl<T> instance) throws CircularDependencyException {
-        final Set<ServiceControllerImpl<?>> visited = new IdentityHashSet<ServiceControllerImpl<?>>();
-        final Deque<ServiceControllerImpl<?>> remaining = new ArrayDeque<ServiceControllerImpl<?>>();
-        ServiceControllerImpl<?> current = instance;
-        do {
-            try {
-                synchronized (current) {
-                    if (current.getSubstateLocked() == Substate.CANCELLED) {
-                        continue;
-                    }
-                }
-                final ServiceRegistrationImpl reg = current.getPrimaryRegistration();
-                IdentityHashSet<Dependent> dependents = null;
-                synchronized (reg) {
-                    // concurrent removal, skip this one entirely
-                    if (reg.getInstance() == null) {
-                        continue;
-                    }
-                    dependents = reg.getDependents();
-                    synchronized (dependents) {
-                        detectCircularity(reg.getDependents(), instance, visited, remaining);
-                    }
-                    synchronized (current) {
-                        detectCircularity(current.getChildren(), instance, visited, remaining);
-                    }
-                }
-                for (ServiceRegistrationImpl alias: current.getAliasRegistrations()) {
-                    synchronized (alias) {
-                        dependents = alias.getDependents();
-                        synchronized (dependents) {
-                            detectCircularity(dependents, instance, visited, remaining);
-                        }
-                    }
-                }
-            } finally {
-                current = remaining.pollFirst();
-            }
-        } while (current != null);
+        if (! topologicalOrder.insert(instance)) {
+            throw new CircularDependencyException("Service " + instance.getName() + " has a circular dependency");
+        }
     }
 
-    private void detectCircularity(IdentityHashSet<? extends Dependent> dependents, ServiceControllerImpl<?> instance, Set<ServiceControllerImpl<?>> visited,  Deque<ServiceControllerImpl<?>> remaining) {
-        final Iterator<? extends Dependent> iterator = dependents.iterator();
-        if (! iterator.hasNext()) {
-            // No dependents == no cycle; continue
-            return;
-        } else do {
-            final Dependent dependent = iterator.next();
-            final ServiceControllerImpl<?> controller = dependent.getController();
-            if (controller == instance) {
-                throw new CircularDependencyException("Service " + name + " has a circular dependency");
-            }
-            if (visited.add(controller)) {
-                remaining.push(controller);
-            }
-        } while (iterator.hasNext());
+    /**
+     * Take a removed or rolled back service out of the topological order.
+     *
+     * @param instance the service
+     */
+    void removeFromTopologicalOrder(final ServiceControllerImpl<?> instance) {
+        topologicalOrder.remove(instance);
     }
 
     private static final AtomicInteger executorSeq = new AtomicInteger(1);
@@ -603,11 +1018,17 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
             ServiceLogger.ROOT.uncaughtException(e, t);
         }
     };
+    private static final ThreadLocal<ContainerExecutor> CONTAINER_EXECUTOR = new ThreadLocal<ContainerExecutor>();
     private static final ThreadPoolExecutor.CallerRunsPolicy POLICY = new ThreadPoolExecutor.CallerRunsPolicy();
 
     final class ContainerExecutor extends ThreadPoolExecutor {
 
-        ContainerExecutor(final int corePoolSize, final int maximumPoolSize, final long keepAliveTime, final TimeUnit unit) {
+        private final int queueCapacity;
+        private final AtomicInteger peakQueueSize = new AtomicInteger();
+        private final Object capacityLock = new Object();
+        private volatile int capacityWaiters;
+
+        ContainerExecutor(final int corePoolSize, final int maximumPoolSize, final long keepAliveTime, final TimeUnit unit, final int queueCapacity) {
             super(corePoolSize, maximumPoolSize, keepAliveTime, unit, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
                 private final int id = executorSeq.getAndIncrement();
                 private final AtomicInteger threadSeq = new AtomicInteger(1);
@@ -618,6 +1039,60 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
                     return thread;
                 }
             }, POLICY);
+            this.queueCapacity = queueCapacity;
+        }
+
+        public void execute(final Runnable command) {
+            super.execute(command);
+            final int size = getQueue().size();
+            int peak;
+            do {
+                peak = peakQueueSize.get();
+            } while (size > peak && ! peakQueueSize.compareAndSet(peak, size));
+        }
+
+        int getPeakQueueSize() {
+            return peakQueueSize.get();
+        }
+
+        /**
+         * Wait until the task queue has room, if its capacity is limited.  Threads of this pool never wait, since
+         * they are the ones which drain the queue.
+         */
+        void awaitQueueCapacity() {
+            if (queueCapacity == 0 || CONTAINER_EXECUTOR.get() == this) {
+                return;
+            }
+            final BlockingQueue<Runnable> queue = getQueue();
+            if (queue.size() < queueCapacity) {
+                return;
+            }
+            synchronized (capacityLock) {
+                capacityWaiters++;
+                try {
+                    while (queue.size() >= queueCapacity && ! isShutdown()) {
+                        capacityLock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    capacityWaiters--;
+                }
+            }
+        }
+
+        protected void beforeExecute(final Thread t, final Runnable r) {
+            super.beforeExecute(t, r);
+            if (queueCapacity != 0) {
+                if (CONTAINER_EXECUTOR.get() != this) {
+                    CONTAINER_EXECUTOR.set(this);
+                }
+                if (capacityWaiters > 0) {
+                    synchronized (capacityLock) {
+                        capacityLock.notifyAll();
+                    }
+                }
+            }
         }
 
         protected void afterExecute(final Runnable r, final Throwable t) {
@@ -628,7 +1103,96 @@ final class ServiceContainerImpl extends ServiceTargetImpl implements ServiceCon
         }
 
         protected void terminated() {
+            synchronized (capacityLock) {
+                capacityLock.notifyAll();
+            }
             shutdownComplete(shutdownInitiated);
         }
     }
+
+    /**
+     * Count a task which the container has to wait for before it can terminate.
+     *
+     * @throws RejectedExecutionException if the container has already started terminating
+     */
+    void addOutstandingTask() throws RejectedExecutionException {
+        final AtomicInteger outstandingTasks = this.outstandingTasks;
+        int cnt;
+        do {
+            cnt = outstandingTasks.get();
+            if (cnt == 0) {
+                throw new RejectedExecutionException("Container has terminated");
+            }
+        } while (! outstandingTasks.compareAndSet(cnt, cnt + 1));
+    }
+
+    void outstandingTaskComplete() {
+        if (outstandingTasks.decrementAndGet() == 0) {
+            final Executor executor = this.executor;
+            if (executor instanceof ContainerExecutor) {
+                // nothing is left to submit to the pool, so it terminates once it has run what it has queued
+                ((ContainerExecutor) executor).shutdown();
+            } else {
+                shutdownComplete(shutdownInitiated);
+            }
+        }
+    }
+
+    /**
+     * An executor which submits container tasks to a user-supplied executor.  The outstanding tasks are counted so
+     * that termination can be detected without shutting down (or even knowing the type of) the user's executor,
+     * which remains the responsibility of its owner.
+     */
+    final class DelegatingExecutor implements Executor {
+
+        private final Executor delegate;
+
+        DelegatingExecutor(final Executor delegate) {
+            this.delegate = delegate;
+        }
+
+        public void execute(final Runnable command) {
+            addOutstandingTask();
+            try {
+                delegate.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            command.run();
+                        } catch (Throwable t) {
+                            HANDLER.uncaughtException(Thread.currentThread(), t);
+                        } finally {
+                            outstandingTaskComplete();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                outstandingTaskComplete();
+                throw e;
+            } catch (RuntimeException e) {
+                outstandingTaskComplete();
+                throw new RejectedExecutionException(e);
+            }
+        }
+    }
+
+    /**
+     * An executor which runs each task on a new thread.  With a factory of virtual threads, this allows any number
+     * of blocking lifecycle tasks to be in flight at once.
+     */
+    static final class ThreadPerTaskExecutor implements Executor {
+
+        private final ThreadFactory threadFactory;
+
+        ThreadPerTaskExecutor(final ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+        }
+
+        public void execute(final Runnable command) {
+            final Thread thread = threadFactory.newThread(command);
+            if (thread == null) {
+                throw new RejectedExecutionException("Thread factory did not create a thread");
+            }
+            thread.start();
+        }
+    }
 }
@@ -26,10 +26,15 @@ import static java.lang.Thread.holdsLock;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.jboss.msc.service.management.ServiceStatus;
 import org.jboss.msc.value.Value;
@@ -67,9 +72,11 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
      */
     private final ValueInjection<?>[] outInjections;
     /**
-     * The set of registered service listeners.
+     * The registered service listeners: an array of up to {@link #MAX_INLINE_LISTENERS} listeners (the shared
+     * {@link #NO_LISTENERS} if there are none), or an {@code IdentityHashSet} once there are more.  The arrays are
+     * never modified in place.
      */
-    private final IdentityHashSet<ServiceListener<? super S>> listeners;
+    private Object listeners;
     /**
      * The primary registration of this service.
      */
@@ -83,9 +90,18 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
      */
     private final ServiceControllerImpl<?> parent;
     /**
-     * The children of this service (only valid during {@link State#UP}).
+     * The children of this service (only valid during {@link State#UP}), or {@code null} if there are none.
      */
-    private final IdentityHashSet<ServiceControllerImpl<?>> children;
+    private IdentityHashSet<ServiceControllerImpl<?>> children;
+    /**
+     * An immutable copy of {@link #children}, or {@code null} if it has to be rebuilt.
+     */
+    private ServiceControllerImpl<?>[] childrenSnapshot = NO_CONTROLLERS;
+    /**
+     * The last array of dependents handed out to dependent notification tasks.  Its elements are the shared
+     * snapshots of the registrations and the children, so it can be reused as long as none of them changed.
+     */
+    private Dependent[][] dependentsSnapshot;
     /**
      * The start exception.
      */
@@ -98,13 +114,23 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
      * The controller state.
      */
     private Substate state = Substate.NEW;
+    /**
+     * The state, mode and start exception as of the last change, for readers which do not hold the lock.  Republished
+     * by {@link #publishStatus()} after each change of any of the three.
+     */
+    private volatile StatusSnapshot status = StatusSnapshot.of(Substate.NEW, ServiceController.Mode.NEVER, null);
+    /**
+     * The position of this service in the container's topological order, or {@link TopologicalOrder#UNORDERED} until
+     * installation is committed.  Guarded by the container's {@link TopologicalOrder}.
+     */
+    private long topologicalOrder = TopologicalOrder.UNORDERED;
     /**
      * The number of registrations which place a demand-to-start on this
      * instance. If this value is >0, propagate a demand up to all parent
      * dependents. If this value is >0 and mode is ON_DEMAND, put a load of +1
      * on {@code upperCount}.
      */
-    private int demandedByCount;
+    private volatile int demandedByCount;
     /**
      * Semaphore count for bringing this dep up. If the value is <= 0, the
      * service is stopped. Each unstarted dependency will put a load of -1 on
@@ -113,14 +139,14 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
      * of ON_DEMAND will put a load of +1 on this value <b>if</b>
      * {@link #demandedByCount} is >0.
      */
-    private int upperCount;
+    private volatile int upperCount;
     /**
      * The number of dependents that are currently running. The deployment will
      * not execute the {@code stop()} method (and subsequently leave the
      * {@link org.jboss.msc.service.ServiceController.State#STOPPING} state)
      * until all running dependents (and listeners) are stopped.
      */
-    private int runningDependents;
+    private volatile int runningDependents;
     /**
      * Count for failure notification. It indicates how many services have
      * failed to start and are not recovered so far. This count monitors
@@ -131,7 +157,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
      * services are retrying to start. Values larger than 1 are ignored to avoid
      * multiple notifications.
      */
-    private int failCount;
+    private volatile int failCount;
     /**
      * Indicates if this service has one or more (possibly transitive)
      * dependencies that are not installed. Count for notification of missing
@@ -142,13 +168,20 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
      * dependents and listeners. Values larger than 1 are ignored to avoid
      * multiple notifications.
      */
-    private int missingDepCount;
+    private volatile int missingDepCount;
     /**
      * The number of asynchronous tasks that are currently running. This
      * includes listeners, start/stop methods, outstanding asynchronous
      * start/stops, and internal tasks.
      */
-    private int asyncTasks;
+    private volatile int asyncTasks;
+
+    private static final AtomicIntegerFieldUpdater<ServiceControllerImpl> demandedByCountUpdater = AtomicIntegerFieldUpdater.newUpdater(ServiceControllerImpl.class, "demandedByCount");
+    private static final AtomicIntegerFieldUpdater<ServiceControllerImpl> upperCountUpdater = AtomicIntegerFieldUpdater.newUpdater(ServiceControllerImpl.class, "upperCount");
+    private static final AtomicIntegerFieldUpdater<ServiceControllerImpl> runningDependentsUpdater = AtomicIntegerFieldUpdater.newUpdater(ServiceControllerImpl.class, "runningDependents");
+    private static final AtomicIntegerFieldUpdater<ServiceControllerImpl> failCountUpdater = AtomicIntegerFieldUpdater.newUpdater(ServiceControllerImpl.class, "failCount");
+    private static final AtomicIntegerFieldUpdater<ServiceControllerImpl> missingDepCountUpdater = AtomicIntegerFieldUpdater.newUpdater(ServiceControllerImpl.class, "missingDepCount");
+    private static final AtomicIntegerFieldUpdater<ServiceControllerImpl> asyncTasksUpdater = AtomicIntegerFieldUpdater.newUpdater(ServiceControllerImpl.class, "asyncTasks");
     /**
      * The service target for adding child services (can be {@code null} if none
      * were added).
@@ -161,9 +194,15 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
     private volatile long lifecycleTime;
 
     private static final Dependent[] NO_DEPENDENTS = new Dependent[0];
+    private static final ServiceControllerImpl<?>[] NO_CONTROLLERS = new ServiceControllerImpl<?>[0];
+    private static final ServiceListener<?>[] NO_LISTENERS = new ServiceListener<?>[0];
+    /**
+     * The number of listeners which are kept in a plain array before switching to a set.
+     */
+    private static final int MAX_INLINE_LISTENERS = 4;
     private static final String[] NO_STRINGS = new String[0];
 
-    ServiceControllerImpl(final Value<? extends Service<? extends S>> serviceValue, final Location location, final Dependency[] dependencies, final ValueInjection<?>[] injections, final ValueInjection<?>[] outInjections, final ServiceRegistrationImpl primaryRegistration, final ServiceRegistrationImpl[] aliasRegistrations, final Set<? extends ServiceListener<? super S>> listeners, final ServiceControllerImpl<?> parent) {
+    ServiceControllerImpl(final Value<? extends Service<? extends S>> serviceValue, final Location location, final Dependency[] dependencies, final ValueInjection<?>[] injections, final ValueInjection<?>[] outInjections, final ServiceRegistrationImpl primaryRegistration, final ServiceRegistrationImpl[] aliasRegistrations, final ServiceListener<? super S>[] listeners, final ServiceControllerImpl<?> parent) {
         this.serviceValue = serviceValue;
         this.location = location;
         this.dependencies = dependencies;
@@ -171,11 +210,21 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         this.outInjections = outInjections;
         this.primaryRegistration = primaryRegistration;
         this.aliasRegistrations = aliasRegistrations;
-        this.listeners =  new IdentityHashSet<ServiceListener<? super S>>(listeners);
+        final int listenerCount = listeners.length;
+        if (listenerCount == 0) {
+            this.listeners = NO_LISTENERS;
+        } else if (listenerCount <= MAX_INLINE_LISTENERS) {
+            this.listeners = listeners;
+        } else {
+            final IdentityHashSet<ServiceListener<? super S>> listenerSet = new IdentityHashSet<ServiceListener<? super S>>(listenerCount << 1);
+            for (ServiceListener<? super S> listener : listeners) {
+                listenerSet.add(listener);
+            }
+            this.listeners = listenerSet;
+        }
         this.parent = parent;
         int depCount = dependencies.length;
         upperCount = parent == null ? -depCount : -depCount - 1;
-        children = new IdentityHashSet<ServiceControllerImpl<?>>();
     }
 
     Substate getSubstateLocked() {
@@ -183,19 +232,79 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
     }
 
     void addAsyncTask() {
-        asyncTasks++;
+        asyncTasksUpdater.incrementAndGet(this);
     }
 
     void addAsyncTasks(final int size) {
-        asyncTasks += size;
+        asyncTasksUpdater.addAndGet(this, size);
     }
 
     void removeAsyncTask() {
-        asyncTasks--;
+        asyncTasksUpdater.decrementAndGet(this);
     }
 
     void removeAsyncTasks(final int size) {
-        asyncTasks -= size;
+        asyncTasksUpdater.addAndGet(this, -size);
+    }
+
+    /**
+     * Account for the completion of an asynchronous task, and execute the tasks of any transition which that makes
+     * possible.  No transition can take place while other tasks are outstanding, so in that case the count is
+     * dropped without taking the controller lock.
+     */
+    private void asyncTaskComplete() {
+        assert !holdsLock(this);
+        if (tryAdd(asyncTasksUpdater, -1, 0)) {
+            return;
+        }
+        final ArrayList<Runnable> tasks = TaskBuffers.acquire();
+        synchronized (this) {
+            removeAsyncTask();
+            transition(tasks);
+            addAsyncTasks(tasks.size());
+        }
+        doExecute(tasks);
+    }
+
+    /**
+     * Add {@code delta} to one of the counters of this controller, unless the counter would end up at
+     * {@code threshold}.  The state machine only cares about which side of their threshold the counters are on, so
+     * an update which does not reach the threshold can never enable a transition and need not take the controller
+     * lock.  Updates which do reach it must be made under the lock, followed by a transition check.
+     *
+     * @param updater the counter updater
+     * @param delta the amount to add
+     * @param threshold the value which the counter must not reach
+     * @return {@code true} if the counter was updated, {@code false} if the update must be made under the lock
+     */
+    private boolean tryAdd(final AtomicIntegerFieldUpdater<ServiceControllerImpl> updater, final int delta, final int threshold) {
+        int cnt;
+        do {
+            cnt = updater.get(this);
+            if (cnt + delta == threshold) {
+                return false;
+            }
+        } while (! updater.compareAndSet(this, cnt, cnt + delta));
+        return true;
+    }
+
+    /**
+     * Add {@code delta} to the demand count, unless the service would go from demanded to undemanded or back.  A
+     * service is demanded while the count is positive; counted updates may step over zero, and demands and undemands
+     * from different dependents may arrive out of order, so the count can briefly be negative.
+     *
+     * @param delta the amount to add
+     * @return {@code true} if the count was updated, {@code false} if the update must be made under the lock
+     */
+    private boolean tryAddDemands(final int delta) {
+        int cnt;
+        do {
+            cnt = demandedByCount;
+            if (cnt > 0 != cnt + delta > 0) {
+                return false;
+            }
+        } while (! demandedByCountUpdater.compareAndSet(this, cnt, cnt + delta));
+        return true;
     }
 
     /**
@@ -229,15 +338,15 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         assert initialMode != null;
         assert ! holdsLock(this);
         final ArrayList<Runnable> listenerAddedTasks = new ArrayList<Runnable>(16);
-        final ArrayList<Runnable> tasks = new ArrayList<Runnable>(16);
+        ArrayList<Runnable> tasks = TaskBuffers.acquire();
         synchronized(this) {
             getListenerTasks(ListenerNotification.LISTENER_ADDED, listenerAddedTasks);
             internalSetMode(initialMode, tasks);
             // placeholder async task for running listener added tasks
-            asyncTasks += listenerAddedTasks.size() + tasks.size() + 1;
+            addAsyncTasks(listenerAddedTasks.size() + tasks.size() + 1);
         }
         doExecute(tasks);
-        tasks.clear();
+        tasks = TaskBuffers.acquire();
         for (Runnable listenerAddedTask : listenerAddedTasks) {
             listenerAddedTask.run();
         }
@@ -252,10 +361,11 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                 tasks.add(new DependencyUninstalledTask(dependents));
             }
             state = Substate.DOWN;
+            publishStatus();
             // subtract one to compensate for +1 above
-            asyncTasks --;
+            removeAsyncTask();
             transition(tasks);
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
@@ -266,8 +376,9 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
     void rollbackInstallation() {
         synchronized(this) {
             mode = Mode.REMOVE;
-            asyncTasks ++;
+            addAsyncTask();
             state = Substate.CANCELLED;
+            publishStatus();
         }
         (new RemoveTask()).run();
     }
@@ -393,11 +504,11 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                     childTarget.valid = false;
                     this.childTarget = null;
                 }
-                if (! children.isEmpty()) {
+                if (children != null) {
                     // placeholder async task for child removal; last removed child will decrement this count
-                    asyncTasks++;
-                    for (ServiceControllerImpl<?> child : children) {
-                        child.setMode(Mode.REMOVE);
+                    addAsyncTask();
+                    for (ServiceControllerImpl<?> child : getChildrenSnapshot()) {
+                        child.internalSetMode(null, Mode.REMOVE);
                     }
                 }
                 getListenerTasks(transition.getAfter().getState(), tasks);
@@ -412,7 +523,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
             }
             case START_FAILED_to_DOWN: {
                 startException = null;
-                failCount--;
+                failCountUpdater.decrementAndGet(this);
                 assert failCount == 0;
                 getListenerTasks(ListenerNotification.FAILED_STOPPED, tasks);
                 tasks.add(new DependencyRetryingTask(getDependents()));
@@ -431,11 +542,11 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                     childTarget.valid = false;
                     this.childTarget = null;
                 }
-                if (! children.isEmpty()) {
+                if (children != null) {
                     // placeholder async task for child removal; last removed child will decrement this count
-                    asyncTasks++;
-                    for (ServiceControllerImpl<?> child : children) {
-                        child.setMode(Mode.REMOVE);
+                    addAsyncTask();
+                    for (ServiceControllerImpl<?> child : getChildrenSnapshot()) {
+                        child.internalSetMode(null, Mode.REMOVE);
                     }
                 }
                 getListenerTasks(transition.getAfter().getState(), tasks);
@@ -459,7 +570,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
             }
             case REMOVING_to_REMOVED: {
                 getListenerTasks(transition.getAfter().getState(), tasks);
-                listeners.clear();
+                listeners = NO_LISTENERS;
                 break;
             }
             case DOWN_to_START_REQUESTED: {
@@ -473,19 +584,106 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
             }
         }
         state = transition.getAfter();
+        publishStatus();
+    }
+
+    private void publishStatus() {
+        assert holdsLock(this);
+        status = StatusSnapshot.of(state, mode, startException);
     }
 
     private void getListenerTasks(final ServiceController.State newState, final ArrayList<Runnable> tasks) {
-        final IdentityHashSet<ServiceListener<? super S>> listeners = this.listeners;
-        for (ServiceListener<? super S> listener : listeners) {
-            tasks.add(new ListenerTask(listener, newState));
+        final Object listeners = this.listeners;
+        if (listeners instanceof ServiceListener<?>[]) {
+            for (ServiceListener<? super S> listener : inlineListeners(listeners)) {
+                tasks.add(new ListenerTask(listener, newState));
+            }
+        } else {
+            for (ServiceListener<? super S> listener : listenerSet(listeners)) {
+                tasks.add(new ListenerTask(listener, newState));
+            }
         }
     }
 
     private void getListenerTasks(final ListenerNotification notification, final ArrayList<Runnable> tasks) {
-        final IdentityHashSet<ServiceListener<? super S>> listeners = this.listeners;
-        for (ServiceListener<? super S> listener : listeners) {
-            tasks.add(new ListenerTask(listener, notification));
+        final Object listeners = this.listeners;
+        if (listeners instanceof ServiceListener<?>[]) {
+            for (ServiceListener<? super S> listener : inlineListeners(listeners)) {
+                tasks.add(new ListenerTask(listener, notification));
+            }
+        } else {
+            for (ServiceListener<? super S> listener : listenerSet(listeners)) {
+                tasks.add(new ListenerTask(listener, notification));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ServiceListener<? super S>[] inlineListeners(final Object listeners) {
+        return (ServiceListener<? super S>[]) listeners;
+    }
+
+    @SuppressWarnings("unchecked")
+    private IdentityHashSet<ServiceListener<? super S>> listenerSet(final Object listeners) {
+        return (IdentityHashSet<ServiceListener<? super S>>) listeners;
+    }
+
+    /**
+     * Add a listener, switching from the inline array to a set if it grows too large.
+     *
+     * @param listener the listener to add
+     * @return {@code true} if the listener was added, {@code false} if it was already present
+     */
+    private boolean addListenerLocked(final ServiceListener<? super S> listener) {
+        assert holdsLock(this);
+        final Object listeners = this.listeners;
+        if (! (listeners instanceof ServiceListener<?>[])) {
+            return listenerSet(listeners).add(listener);
+        }
+        final ServiceListener<? super S>[] array = inlineListeners(listeners);
+        for (ServiceListener<? super S> existing : array) {
+            if (existing == listener) {
+                return false;
+            }
+        }
+        final int length = array.length;
+        if (length < MAX_INLINE_LISTENERS) {
+            final ServiceListener<?>[] newArray = new ServiceListener<?>[length + 1];
+            System.arraycopy(array, 0, newArray, 0, length);
+            newArray[length] = listener;
+            this.listeners = newArray;
+        } else {
+            final IdentityHashSet<ServiceListener<? super S>> set = new IdentityHashSet<ServiceListener<? super S>>(length + 1);
+            for (ServiceListener<? super S> existing : array) {
+                set.add(existing);
+            }
+            set.add(listener);
+            this.listeners = set;
+        }
+        return true;
+    }
+
+    private void removeListenerLocked(final ServiceListener<? super S> listener) {
+        assert holdsLock(this);
+        final Object listeners = this.listeners;
+        if (! (listeners instanceof ServiceListener<?>[])) {
+            listenerSet(listeners).remove(listener);
+            return;
+        }
+        final ServiceListener<? super S>[] array = inlineListeners(listeners);
+        final int length = array.length;
+        for (int i = 0; i < length; i++) {
+            if (array[i] == listener) {
+                if (length == 1) {
+                    this.listeners = NO_LISTENERS;
+                } else {
+                    final ServiceListener<?>[] newArray = new ServiceListener<?>[length - 1];
+                    System.arraycopy(array, 0, newArray, 0, i);
+                    System.arraycopy(array, i + 1, newArray, i, length - i - 1);
+                    this.listeners = newArray;
+                }
+                return;
+            }
         }
     }
 
@@ -493,26 +691,43 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         assert !holdsLock(this);
         if (task == null) return;
         try {
-            primaryRegistration.getContainer().getExecutor().execute(task);
+            primaryRegistration.getContainer().executeLifecycleTask(task);
         } catch (RejectedExecutionException e) {
             task.run();
         }
     }
 
+    /**
+     * Execute the given tasks and recycle the list; the caller must not use the list afterwards.
+     *
+     * @param tasks the tasks, or {@code null} for none
+     */
     void doExecute(final ArrayList<Runnable> tasks) {
         assert !holdsLock(this);
         if (tasks == null) return;
-        final Executor executor = primaryRegistration.getContainer().getExecutor();
-        for (Runnable task : tasks) {
+        final ServiceContainerImpl container = primaryRegistration.getContainer();
+        final int size = tasks.size();
+        for (int i = 0; i < size; i++) {
+            final Runnable task = tasks.get(i);
             try {
-                executor.execute(task);
+                if (task instanceof ServiceControllerImpl.StartTask) {
+                    container.executeStartTask(task, this);
+                } else if (task instanceof ServiceControllerImpl.StopTask) {
+                    container.executeLifecycleTask(task);
+                } else if (task instanceof ServiceControllerImpl.ListenerTask) {
+                    container.executeListenerTask(task);
+                } else {
+                    container.executeInternalTask(task);
+                }
             } catch (RejectedExecutionException e) {
                 task.run();
             }
         }
+        TaskBuffers.release(tasks);
     }
 
     public void setMode(final ServiceController.Mode newMode) {
+        primaryRegistration.getContainer().awaitQueueCapacity();
         internalSetMode(null, newMode);
     }
 
@@ -524,13 +739,15 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         if (newMode != Mode.REMOVE && primaryRegistration.getContainer().isShutdown()) {
             throw new IllegalArgumentException("Container is shutting down");
         }
-        final ArrayList<Runnable> tasks = new ArrayList<Runnable>(4);
+        final ArrayList<Runnable> tasks = TaskBuffers.acquire();
         synchronized (this) {
             final Mode oldMode = mode;
             if (expectedMode != null && expectedMode != oldMode) {
+                TaskBuffers.release(tasks);
                 return false;
             }
             if (oldMode == newMode) {
+                TaskBuffers.release(tasks);
                 return true;
             }
             internalSetMode(newMode, tasks);
@@ -538,7 +755,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                 // if not empty, don't bother since transition should do nothing until tasks are done
                 transition(tasks);
             }
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
         return true;
@@ -568,14 +785,14 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                     case ON_DEMAND: {
                         if (demandedByCount > 0) {
                             assert upperCount < 1;
-                            upperCount++;
+                            upperCountUpdater.incrementAndGet(this);
                             taskList.add(new DemandParentsTask());
                         }
                         break;
                     }
                     case PASSIVE: {
                         assert upperCount < 1;
-                        upperCount++;
+                        upperCountUpdater.incrementAndGet(this);
                         if (demandedByCount > 0) {
                             taskList.add(new DemandParentsTask());
                         }
@@ -584,7 +801,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                     case ACTIVE: {
                         taskList.add(new DemandParentsTask());
                         assert upperCount < 1;
-                        upperCount++;
+                        upperCountUpdater.incrementAndGet(this);
                         break;
                     }
                 }
@@ -598,7 +815,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                     }
                     case NEVER: {
                         if (demandedByCount > 0) {
-                            upperCount--;
+                            upperCountUpdater.decrementAndGet(this);
                             taskList.add(new UndemandParentsTask());
                         }
                         break;
@@ -606,7 +823,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                     case PASSIVE: {
                         if (demandedByCount == 0) {
                             assert upperCount < 1;
-                            upperCount++;
+                            upperCountUpdater.incrementAndGet(this);
                         }
                         break;
                     }
@@ -614,7 +831,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                         taskList.add(new DemandParentsTask());
                         if (demandedByCount == 0) {
                             assert upperCount < 1;
-                            upperCount++;
+                            upperCountUpdater.incrementAndGet(this);
                         }
                         break;
                     }
@@ -631,12 +848,12 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                         if (demandedByCount > 0) {
                             taskList.add(new UndemandParentsTask());
                         }
-                        upperCount--;
+                        upperCountUpdater.decrementAndGet(this);
                         break;
                     }
                     case ON_DEMAND: {
                         if (demandedByCount == 0) {
-                            upperCount--;
+                            upperCountUpdater.decrementAndGet(this);
                         }
                         break;
                     }
@@ -655,12 +872,12 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                     }
                     case NEVER: {
                         taskList.add(new UndemandParentsTask());
-                        upperCount--;
+                        upperCountUpdater.decrementAndGet(this);
                         break;
                     }
                     case ON_DEMAND: {
                         if (demandedByCount == 0) {
-                            upperCount--;
+                            upperCountUpdater.decrementAndGet(this);
                             taskList.add(new UndemandParentsTask());
                         }
                         break;
@@ -676,6 +893,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
             }
         }
         mode = newMode;
+        publishStatus();
     }
 
     @Override
@@ -690,16 +908,19 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
 
     @Override
     public void dependencyInstalled() {
+        if (tryAdd(missingDepCountUpdater, -1, 0)) {
+            return;
+        }
         final ArrayList<Runnable> tasks;
         synchronized (this) {
-            if (--missingDepCount != 0 || state.compareTo(Substate.CANCELLED) <= 0) {
+            if (missingDepCountUpdater.decrementAndGet(this) != 0 || state.compareTo(Substate.CANCELLED) <= 0) {
                 return;
             }
             // we dropped it to 0
-            tasks = new ArrayList<Runnable>(16);
+            tasks = TaskBuffers.acquire();
             getListenerTasks(ListenerNotification.DEPENDENCY_INSTALLED, tasks);
             tasks.add(new DependencyInstalledTask(getDependents()));
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
@@ -711,100 +932,121 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
 
     @Override
     public void dependencyUninstalled() {
+        if (tryAdd(missingDepCountUpdater, 1, 1)) {
+            return;
+        }
         final ArrayList<Runnable> tasks;
         synchronized (this) {
-            if (++missingDepCount != 1 || state.compareTo(Substate.CANCELLED) <= 0) {
+            if (missingDepCountUpdater.incrementAndGet(this) != 1 || state.compareTo(Substate.CANCELLED) <= 0) {
                 return;
             }
             // we raised it to 1
-            tasks = new ArrayList<Runnable>(16);
+            tasks = TaskBuffers.acquire();
             getListenerTasks(ListenerNotification.MISSING_DEPENDENCY, tasks);
             tasks.add(new DependencyUninstalledTask(getDependents()));
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
 
     @Override
     public void immediateDependencyUp() {
+        if (tryAdd(upperCountUpdater, 1, 1)) {
+            return;
+        }
         final ArrayList<Runnable> tasks;
         synchronized (this) {
             assert upperCount < 1;
-            if (++upperCount != 1) {
+            if (upperCountUpdater.incrementAndGet(this) != 1) {
                 return;
             }
             // we raised it to 1
-            tasks = new ArrayList<Runnable>();
+            tasks = TaskBuffers.acquire();
             transition(tasks);
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
 
     @Override
     public void immediateDependencyDown() {
+        if (tryAdd(upperCountUpdater, -1, 0)) {
+            return;
+        }
         final ArrayList<Runnable> tasks;
         synchronized (this) {
-            if (--upperCount != 0) {
+            if (upperCountUpdater.decrementAndGet(this) != 0) {
                 return;
             }
             // we dropped it below 0
-            tasks = new ArrayList<Runnable>();
+            tasks = TaskBuffers.acquire();
             transition(tasks);
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
 
     @Override
     public void dependencyFailed() {
+        if (tryAdd(failCountUpdater, 1, 1)) {
+            return;
+        }
         final ArrayList<Runnable> tasks;
         synchronized (this) {
-            if (++failCount != 1 || state.compareTo(Substate.CANCELLED) <= 0) {
+            if (failCountUpdater.incrementAndGet(this) != 1 || state.compareTo(Substate.CANCELLED) <= 0) {
                 return;
             }
             // we raised it to 1
-            tasks = new ArrayList<Runnable>();
+            tasks = TaskBuffers.acquire();
             getListenerTasks(ListenerNotification.DEPENDENCY_FAILURE, tasks);
             tasks.add(new DependencyFailedTask(getDependents()));
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
 
     @Override
     public void dependencyFailureCleared() {
+        if (tryAdd(failCountUpdater, -1, 0)) {
+            return;
+        }
         final ArrayList<Runnable> tasks;
         synchronized (this) {
-            if (--failCount != 0 || state == Substate.CANCELLED) {
+            if (failCountUpdater.decrementAndGet(this) != 0 || state == Substate.CANCELLED) {
                 return;
             }
             // we dropped it to 0
-            tasks = new ArrayList<Runnable>();
+            tasks = TaskBuffers.acquire();
             getListenerTasks(ListenerNotification.DEPENDENCY_FAILURE_CLEAR, tasks);
             tasks.add(new DependencyRetryingTask(getDependents()));
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
 
     void dependentStarted() {
         assert !holdsLock(this);
+        if (tryAdd(runningDependentsUpdater, 1, 1)) {
+            return;
+        }
         synchronized (this) {
-            runningDependents++;
+            runningDependentsUpdater.incrementAndGet(this);
         }
     }
 
     void dependentStopped() {
         assert !holdsLock(this);
+        if (tryAdd(runningDependentsUpdater, -1, 0)) {
+            return;
+        }
         final ArrayList<Runnable> tasks;
         synchronized (this) {
-            if (--runningDependents != 0) {
+            if (runningDependentsUpdater.decrementAndGet(this) != 0) {
                 return;
             }
-            tasks = new ArrayList<Runnable>();
+            tasks = TaskBuffers.acquire();
             transition(tasks);
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
@@ -848,40 +1090,53 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
 
     void addDemands(final int demandedByCount) {
         assert !holdsLock(this);
-        final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+        // only the first demand has any effect
+        if (tryAddDemands(demandedByCount)) {
+            return;
+        }
+        final ArrayList<Runnable> tasks = TaskBuffers.acquire();
         final boolean propagate;
         synchronized (this) {
-            final int cnt = this.demandedByCount;
-            this.demandedByCount += demandedByCount;
-            propagate = cnt == 0 && mode.compareTo(Mode.NEVER) > 0;
-            if (cnt == 0 && mode == Mode.ON_DEMAND) {
+            final int oldCnt = demandedByCountUpdater.getAndAdd(this, demandedByCount);
+            final boolean demanded = oldCnt <= 0 && oldCnt + demandedByCount > 0;
+            propagate = demanded && mode.compareTo(Mode.NEVER) > 0;
+            if (demanded && mode == Mode.ON_DEMAND) {
                 assert upperCount < 1;
-                upperCount++;
+                upperCountUpdater.incrementAndGet(this);
                 transition(tasks);
             }
             if (propagate) {
                 tasks.add(new DemandParentsTask());
             }
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
 
     void removeDemand() {
+        removeDemands(1);
+    }
+
+    void removeDemands(final int demandedByCount) {
         assert !holdsLock(this);
-        final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+        // only the removal of the last demand has any effect
+        if (tryAddDemands(-demandedByCount)) {
+            return;
+        }
+        final ArrayList<Runnable> tasks = TaskBuffers.acquire();
         final boolean propagate;
         synchronized (this) {
-            final int cnt = --demandedByCount;
-            propagate = cnt == 0 && (mode == Mode.ON_DEMAND || mode == Mode.PASSIVE);
-            if (cnt == 0 && mode == Mode.ON_DEMAND) {
-                upperCount--;
+            final int oldCnt = demandedByCountUpdater.getAndAdd(this, -demandedByCount);
+            final boolean undemanded = oldCnt > 0 && oldCnt - demandedByCount <= 0;
+            propagate = undemanded && (mode == Mode.ON_DEMAND || mode == Mode.PASSIVE);
+            if (undemanded && mode == Mode.ON_DEMAND) {
+                upperCountUpdater.decrementAndGet(this);
                 transition(tasks);
             }
             if (propagate) {
                 tasks.add(new UndemandParentsTask());
             }
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
@@ -894,13 +1149,17 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                 case STARTING:
                 case UP:
                 case STOP_REQUESTED: {
+                    if (children == null) {
+                        children = new IdentityHashSet<ServiceControllerImpl<?>>();
+                    }
                     children.add(child);
-                    newDependent(child, tasks = new ArrayList<Runnable>());
+                    childrenSnapshot = null;
+                    newDependent(child, tasks = TaskBuffers.acquire());
                     break;
                 }
                 default: throw new IllegalStateException("Children cannot be added in state " + state.getState());
             }
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
@@ -909,14 +1168,21 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         assert !holdsLock(this);
         final ArrayList<Runnable> tasks;
         synchronized (this) {
-            children.remove(child);
-            if (children.isEmpty()) {
+            if (children != null && children.remove(child)) {
+                if (children.isEmpty()) {
+                    children = null;
+                    childrenSnapshot = NO_CONTROLLERS;
+                } else {
+                    childrenSnapshot = null;
+                }
+            }
+            if (children == null) {
                 switch (state) {
                     case START_FAILED:
                     case STOPPING:
                         // last child was removed; drop async count
-                        asyncTasks--;
-                        transition(tasks = new ArrayList<Runnable>());
+                        removeAsyncTask();
+                        transition(tasks = TaskBuffers.acquire());
                         break;
                     default:
                         return;
@@ -924,26 +1190,42 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
             } else {
                 return;
             }
-            asyncTasks += tasks.size();
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
 
-    IdentityHashSet<ServiceControllerImpl<?>> getChildren() {
+    ServiceControllerImpl<?>[] getChildren() {
         assert holdsLock(this);
-        return children;
+        return getChildrenSnapshot();
     }
 
     public ServiceController<?> getParent() {
         return parent;
     }
 
+    ServiceControllerImpl<?> getParentController() {
+        return parent;
+    }
+
+    Dependency[] getDependencyArray() {
+        return dependencies;
+    }
+
+    long getTopologicalOrder() {
+        return topologicalOrder;
+    }
+
+    void setTopologicalOrder(final long topologicalOrder) {
+        this.topologicalOrder = topologicalOrder;
+    }
+
     public ServiceContainerImpl getServiceContainer() {
         return primaryRegistration.getContainer();
     }
 
     public ServiceController.State getState() {
-        return state.getState();
+        return status.state.getState();
     }
 
     public S getValue() throws IllegalStateException {
@@ -980,16 +1262,16 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
             state = this.state;
             // Always run listener if removed.
             if (state != Substate.REMOVED) {
-                if (! listeners.add(listener)) {
+                if (! addListenerLocked(listener)) {
                     // Duplicates not allowed
                     throw new IllegalArgumentException("Listener " + listener + " already present on controller for " + primaryRegistration.getName());
                 }
                 if (state == Substate.NEW) {
                     return;
                 }
-                asyncTasks ++;
+                addAsyncTask();
             } else {
-                asyncTasks += 2;
+                addAsyncTasks(2);
             }
         }
         invokeListener(listener, ListenerNotification.LISTENER_ADDED, null);
@@ -1000,14 +1282,12 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
 
     public void removeListener(final ServiceListener<? super S> listener) {
         synchronized (this) {
-            listeners.remove(listener);
+            removeListenerLocked(listener);
         }
     }
 
     public StartException getStartException() {
-        synchronized (this) {
-            return startException;
-        }
+        return status.startException;
     }
 
     public void retry() {
@@ -1017,28 +1297,146 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
             if (state.getState() != ServiceController.State.START_FAILED) {
                 return;
             }
-            failCount--;
+            failCountUpdater.decrementAndGet(this);
             assert failCount == 0;
             startException = null;
-            transition(tasks = new ArrayList<Runnable>());
-            asyncTasks += tasks.size();
+            publishStatus();
+            transition(tasks = TaskBuffers.acquire());
+            addAsyncTasks(tasks.size());
         }
         doExecute(tasks);
     }
 
     public ServiceController.Mode getMode() {
-        synchronized (this) {
-            return mode;
-        }
+        return status.mode;
     }
 
     public boolean compareAndSetMode(final Mode expectedMode, final Mode newMode) {
         if (expectedMode == null) {
             throw new IllegalArgumentException("expectedMode is null");
         }
+        primaryRegistration.getContainer().awaitQueueCapacity();
         return internalSetMode(expectedMode, newMode);
     }
 
+    /**
+     * Change the mode of many controllers at once.  Rather than each controller demanding or undemanding its
+     * dependencies and parent on its own, the demand changes are summed up per dependency and applied as one counted
+     * update each, so that shared dependencies are only visited once.
+     *
+     * <p>
+     * All the controllers are checked before any mode is changed: none may belong to a container which is shutting
+     * down unless the new mode is {@link Mode#REMOVE REMOVE}, and if a container is given, all must belong to it.
+     *
+     * @param container the container the controllers must belong to, or {@code null} to accept any
+     * @param controllers the controllers
+     * @param newMode the new mode
+     * @throws IllegalArgumentException if a controller belongs to another container or to one which is shutting down
+     */
+    static void setModes(final ServiceContainerImpl container, final Collection<? extends ServiceController<?>> controllers, final Mode newMode) throws IllegalArgumentException {
+        for (ServiceController<?> controller : controllers) {
+            if (controller == null) {
+                continue;
+            }
+            if (container != null && controller.getServiceContainer() != container) {
+                throw new IllegalArgumentException("Controller for " + controller.getName() + " belongs to another container");
+            }
+            if (newMode != Mode.REMOVE && controller instanceof ServiceControllerImpl && ((ServiceControllerImpl<?>) controller).primaryRegistration.getContainer().isShutdown()) {
+                throw new IllegalArgumentException("Container is shutting down");
+            }
+        }
+        final ArrayList<ServiceControllerImpl<?>> demandChanged = new ArrayList<ServiceControllerImpl<?>>();
+        final Map<Object, int[]> demandDeltas = new IdentityHashMap<Object, int[]>();
+        try {
+            for (ServiceController<?> controller : controllers) {
+                if (controller == null) {
+                    continue;
+                }
+                if (! (controller instanceof ServiceControllerImpl)) {
+                    controller.setMode(newMode);
+                    continue;
+                }
+                final ServiceControllerImpl<?> controllerImpl = (ServiceControllerImpl<?>) controller;
+                final int delta = controllerImpl.setModeForBulk(newMode);
+                if (delta != 0) {
+                    demandChanged.add(controllerImpl);
+                    for (Dependency dependency : controllerImpl.dependencies) {
+                        addDemandDelta(demandDeltas, dependency, delta);
+                    }
+                    if (controllerImpl.parent != null) {
+                        addDemandDelta(demandDeltas, controllerImpl.parent, delta);
+                    }
+                }
+            }
+        } finally {
+            for (Map.Entry<Object, int[]> entry : demandDeltas.entrySet()) {
+                final Object target = entry.getKey();
+                final int delta = entry.getValue()[0];
+                if (delta == 0) {
+                    continue;
+                }
+                if (target instanceof ServiceControllerImpl) {
+                    final ServiceControllerImpl<?> parent = (ServiceControllerImpl<?>) target;
+                    if (delta > 0) parent.addDemands(delta); else parent.removeDemands(-delta);
+                } else {
+                    final Dependency dependency = (Dependency) target;
+                    if (delta > 0) dependency.addDemands(delta); else dependency.removeDemands(-delta);
+                }
+            }
+            // release the placeholder async tasks taken by setModeForBulk
+            for (ServiceControllerImpl<?> controller : demandChanged) {
+                controller.asyncTaskComplete();
+            }
+        }
+    }
+
+    private static void addDemandDelta(final Map<Object, int[]> demandDeltas, final Object target, final int delta) {
+        final int[] count = demandDeltas.get(target);
+        if (count == null) {
+            demandDeltas.put(target, new int[] { delta });
+        } else {
+            count[0] += delta;
+        }
+    }
+
+    /**
+     * Set the mode as part of {@link #setModes(ServiceContainerImpl, Collection, Mode)}.  A demand change on the
+     * dependencies and parent is not scheduled but returned to the caller, which must apply it and then release the
+     * placeholder async task taken for it.
+     *
+     * @param newMode the new mode
+     * @return {@code 1} if the dependencies must be demanded, {@code -1} if they must be undemanded, {@code 0} otherwise
+     */
+    private int setModeForBulk(final Mode newMode) {
+        assert !holdsLock(this);
+        final ArrayList<Runnable> tasks = TaskBuffers.acquire();
+        int delta = 0;
+        synchronized (this) {
+            if (mode == newMode) {
+                TaskBuffers.release(tasks);
+                return 0;
+            }
+            internalSetMode(newMode, tasks);
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                final Runnable task = tasks.get(i);
+                if (task instanceof ServiceControllerImpl.DemandParentsTask) {
+                    tasks.remove(i);
+                    delta = 1;
+                } else if (task instanceof ServiceControllerImpl.UndemandParentsTask) {
+                    tasks.remove(i);
+                    delta = -1;
+                }
+            }
+            if (delta == 0 && tasks.isEmpty()) {
+                // if not empty, don't bother since transition should do nothing until tasks are done
+                transition(tasks);
+            }
+            addAsyncTasks(delta == 0 ? tasks.size() : tasks.size() + 1);
+        }
+        doExecute(tasks);
+        return delta;
+    }
+
     ServiceStatus getStatus() {
         synchronized (this) {
             final String parentName = parent == null ? null : parent.getName().getCanonicalName();
@@ -1191,21 +1589,13 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         } catch (Throwable t) {
             ServiceLogger.SERVICE.listenerFailed(t, listener);
         } finally {
-            final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-            synchronized (this) {
-                // Subtract one for this executing listener
-                asyncTasks --;
-                transition(tasks);
-                asyncTasks += tasks.size();
-            }
-            doExecute(tasks);
+            // Subtract one for this executing listener
+            asyncTaskComplete();
         }
     }
 
     Substate getSubstate() {
-        synchronized (this) {
-            return state;
-        }
+        return status.state;
     }
 
     ServiceRegistrationImpl getPrimaryRegistration() {
@@ -1222,28 +1612,113 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
      * @return an array of dependents
      */
     private Dependent[][] getDependents() {
-        IdentityHashSet<Dependent> dependentSet = primaryRegistration.getDependents();
-        if (aliasRegistrations.length == 0) {
-            synchronized (dependentSet) {
-                return new Dependent[][] { dependentSet.toScatteredArray(NO_DEPENDENTS),
-                        children.toScatteredArray(NO_DEPENDENTS)};
+        assert holdsLock(this);
+        Dependent[][] dependents = dependentsSnapshot;
+        final Dependent[] primaryDependents = primaryRegistration.getDependentsSnapshot();
+        final Dependent[] childDependents = getChildrenSnapshot();
+        boolean changed = dependents == null || dependents[0] != primaryDependents || dependents[1] != childDependents;
+        if (! changed) {
+            for (int i = 0; i < aliasRegistrations.length; i++) {
+                if (dependents[i + 2] != aliasRegistrations[i].getDependentsSnapshot()) {
+                    changed = true;
+                    break;
+                }
             }
         }
-        Dependent[][] dependents = new Dependent[aliasRegistrations.length + 2][];
-        synchronized (dependentSet) {
-            dependents[0] = dependentSet.toScatteredArray(NO_DEPENDENTS);
-        }
-        dependents[1] = children.toScatteredArray(NO_DEPENDENTS);
-        for (int i = 0; i < aliasRegistrations.length; i++) {
-            final ServiceRegistrationImpl alias = aliasRegistrations[i];
-            final IdentityHashSet<Dependent> aliasDependentSet = alias.getDependents();
-            synchronized (aliasDependentSet) {
-                dependents[i + 2] = aliasDependentSet.toScatteredArray(NO_DEPENDENTS);
+        if (changed) {
+            dependents = new Dependent[aliasRegistrations.length + 2][];
+            dependents[0] = primaryDependents;
+            dependents[1] = childDependents;
+            for (int i = 0; i < aliasRegistrations.length; i++) {
+                dependents[i + 2] = aliasRegistrations[i].getDependentsSnapshot();
             }
+            dependentsSnapshot = dependents;
         }
         return dependents;
     }
 
+    /**
+     * Returns an immutable array of the children of this service, shared until a child is added or removed.
+     *
+     * @return the children array
+     */
+    private ServiceControllerImpl<?>[] getChildrenSnapshot() {
+        assert holdsLock(this);
+        ServiceControllerImpl<?>[] snapshot = childrenSnapshot;
+        if (snapshot == null) {
+            final int size = children.size();
+            snapshot = size == 0 ? NO_CONTROLLERS : children.toArray(new ServiceControllerImpl<?>[size], 0, size);
+            childrenSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * The maximum number of transitive dependents visited when computing a start priority.
+     */
+    private static final int MAX_PRIORITY_DEPENDENTS = 256;
+
+    /**
+     * Compute the scheduling priority of the start task of this service.  This is the number of services that
+     * (transitively) depend on this one, including this service itself, counting at most
+     * {@link #MAX_PRIORITY_DEPENDENTS} services.  If {@code weighted} is {@code true}, each service counts for the
+     * number of microseconds its name took to start the last time instead, if known.
+     *
+     * @param weighted {@code true} to weight each service by its last start time
+     * @return the start priority
+     */
+    long getStartPriority(final boolean weighted) {
+        assert !holdsLock(this);
+        final IdentityHashSet<ServiceControllerImpl<?>> visited = new IdentityHashSet<ServiceControllerImpl<?>>();
+        final ArrayDeque<ServiceControllerImpl<?>> remaining = new ArrayDeque<ServiceControllerImpl<?>>();
+        visited.add(this);
+        long priority = 0L;
+        final ServiceContainerImpl container = primaryRegistration.getContainer();
+        ServiceControllerImpl<?> current = this;
+        do {
+            long cost = 1L;
+            if (weighted) {
+                final long lastStartTime = container.getLastStartTime(current.primaryRegistration.getName());
+                if (lastStartTime > 0L) {
+                    cost = Math.max(1L, lastStartTime / 1000L);
+                }
+            }
+            priority += cost;
+            if (visited.size() < MAX_PRIORITY_DEPENDENTS) {
+                current.addDependentControllers(current.primaryRegistration, visited, remaining);
+                for (ServiceRegistrationImpl aliasRegistration : current.aliasRegistrations) {
+                    current.addDependentControllers(aliasRegistration, visited, remaining);
+                }
+                final ServiceControllerImpl<?>[] children;
+                synchronized (current) {
+                    children = current.getChildrenSnapshot();
+                }
+                addControllers(children, visited, remaining);
+            }
+        } while ((current = remaining.poll()) != null);
+        return priority;
+    }
+
+    private void addDependentControllers(final ServiceRegistrationImpl registration, final IdentityHashSet<ServiceControllerImpl<?>> visited, final ArrayDeque<ServiceControllerImpl<?>> remaining) {
+        final Dependent[] dependents = registration.getDependentsSnapshot();
+        final ServiceControllerImpl<?>[] controllers = new ServiceControllerImpl<?>[dependents.length];
+        for (int i = 0; i < dependents.length; i++) {
+            final Dependent dependent = dependents[i];
+            if (dependent != null) {
+                controllers[i] = dependent.getController();
+            }
+        }
+        addControllers(controllers, visited, remaining);
+    }
+
+    private static void addControllers(final ServiceControllerImpl<?>[] controllers, final IdentityHashSet<ServiceControllerImpl<?>> visited, final ArrayDeque<ServiceControllerImpl<?>> remaining) {
+        for (ServiceControllerImpl<?> controller : controllers) {
+            if (controller != null && visited.size() < MAX_PRIORITY_DEPENDENTS && visited.add(controller)) {
+                remaining.add(controller);
+            }
+        }
+    }
+
     enum ContextState {
         SYNC,
         ASYNC,
@@ -1265,14 +1740,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         public void run() {
             try {
                 doDemandParents();
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1284,14 +1752,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         public void run() {
             try {
                 doUndemandParents();
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1309,14 +1770,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                 if (parent != null) {
                     parent.dependentStopped();
                 }
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1334,14 +1788,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                 if (parent != null) {
                     parent.dependentStarted();
                 }
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1368,19 +1815,18 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                     throw new IllegalArgumentException("Service is null");
                 }
                 service.start(context);
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+                final ArrayList<Runnable> tasks = TaskBuffers.acquire();
                 synchronized (ServiceControllerImpl.this) {
                     if (context.state != ContextState.SYNC) {
+                        TaskBuffers.release(tasks);
                         return;
                     }
                     context.state = ContextState.COMPLETE;
-                    if (ServiceContainerImpl.PROFILE_OUTPUT != null) {
-                        writeProfileInfo('S', startNanos, System.nanoTime());
-                    }
+                    startComplete(startNanos);
                     // Subtract one for this task
-                    asyncTasks --;
+                    removeAsyncTask();
                     transition(tasks);
-                    asyncTasks += tasks.size();
+                    addAsyncTasks(tasks.size());
                 }
                 performOutInjections(serviceName);
                 doExecute(tasks);
@@ -1440,14 +1886,15 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                 }
                 context.state = ContextState.FAILED;
                 startException = e;
+                publishStatus();
                 if (ServiceContainerImpl.PROFILE_OUTPUT != null) {
                     writeProfileInfo('F', startNanos, System.nanoTime());
                 }
-                failCount++;
+                failCountUpdater.incrementAndGet(ServiceControllerImpl.this);
                 // Subtract one for this task
-                asyncTasks --;
-                transition(tasks = new ArrayList<Runnable>());
-                asyncTasks += tasks.size();
+                removeAsyncTask();
+                transition(tasks = TaskBuffers.acquire());
+                addAsyncTasks(tasks.size());
             }
             doExecute(tasks);
         }
@@ -1497,9 +1944,9 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                         writeProfileInfo('X', startNanos, System.nanoTime());
                     }
                     // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks = new ArrayList<Runnable>());
-                    asyncTasks += tasks.size();
+                    removeAsyncTask();
+                    transition(tasks = TaskBuffers.acquire());
+                    addAsyncTasks(tasks.size());
                 }
                 doExecute(tasks);
             }
@@ -1562,14 +2009,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                         if (dependent != null) dependent.immediateDependencyUp();
                     }
                 }
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1591,14 +2031,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                         if (dependent != null) dependent.immediateDependencyDown();
                     }
                 }
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1620,14 +2053,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                         if (dependent != null) dependent.dependencyFailed();
                     }
                 }
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1649,14 +2075,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                         if (dependent != null) dependent.dependencyFailureCleared();
                     }
                 }
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1678,14 +2097,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                         if (dependent != null) dependent.dependencyInstalled();
                     }
                 }
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1708,14 +2120,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                         if (dependent != null) dependent.dependencyUninstalled();
                     }
                 }
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1740,14 +2145,8 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                 }
                 final ServiceControllerImpl<?> parent = ServiceControllerImpl.this.parent;
                 if (parent != null) parent.removeChild(ServiceControllerImpl.this);
-                final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
-                synchronized (ServiceControllerImpl.this) {
-                    // Subtract one for this task
-                    asyncTasks --;
-                    transition(tasks);
-                    asyncTasks += tasks.size();
-                }
-                doExecute(tasks);
+                primaryRegistration.getContainer().removeFromTopologicalOrder(ServiceControllerImpl.this);
+                asyncTaskComplete();
             } catch (Throwable t) {
                 ServiceLogger.SERVICE.internalServiceError(t, primaryRegistration.getName());
             }
@@ -1765,7 +2164,7 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         }
 
         public void failed(StartException reason) throws IllegalStateException {
-            final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+            final ArrayList<Runnable> tasks = TaskBuffers.acquire();
             synchronized (ServiceControllerImpl.this) {
                 if (state != ContextState.ASYNC) {
                     throw new IllegalStateException(ILLEGAL_CONTROLLER_STATE);
@@ -1778,14 +2177,15 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
                 reason.setServiceName(serviceName);
                 ServiceLogger.FAIL.startFailed(reason, serviceName);
                 startException = reason;
-                failCount ++;
+                publishStatus();
+                failCountUpdater.incrementAndGet(ServiceControllerImpl.this);
                 if (ServiceContainerImpl.PROFILE_OUTPUT != null) {
                     writeProfileInfo('F', startNanos, System.nanoTime());
                 }
                 // Subtract one for this task
-                asyncTasks --;
+                removeAsyncTask();
                 transition(tasks);
-                asyncTasks += tasks.size();
+                addAsyncTasks(tasks.size());
             }
             doExecute(tasks);
         }
@@ -1813,19 +2213,17 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         }
 
         public void complete() throws IllegalStateException {
-            final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+            final ArrayList<Runnable> tasks = TaskBuffers.acquire();
             synchronized (ServiceControllerImpl.this) {
                 if (state != ContextState.ASYNC) {
                     throw new IllegalStateException(ILLEGAL_CONTROLLER_STATE);
                 } else {
                     state = ContextState.COMPLETE;
-                    if (ServiceContainerImpl.PROFILE_OUTPUT != null) {
-                        writeProfileInfo('S', startNanos, System.nanoTime());
-                    }
+                    startComplete(startNanos);
                     // Subtract one for this task
-                    asyncTasks --;
+                    removeAsyncTask();
                     transition(tasks);
-                    asyncTasks += tasks.size();
+                    addAsyncTasks(tasks.size());
                 }
             }
             doExecute(tasks);
@@ -1858,6 +2256,13 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
             return super.install(serviceBuilder);
         }
 
+        List<ServiceController<?>> installAll(final List<ServiceBuilderImpl<?>> serviceBuilders) throws ServiceRegistryException {
+            if (! valid) {
+                throw new IllegalStateException("Service target is no longer valid");
+            }
+            return super.installAll(serviceBuilders);
+        }
+
         protected <T> ServiceBuilder<T> createServiceBuilder(final ServiceName name, final Value<? extends Service<T>> value, final ServiceControllerImpl<?> parent) throws IllegalArgumentException {
             return super.createServiceBuilder(name, value, ServiceControllerImpl.this);
         }
@@ -1868,6 +2273,16 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         }
     }
 
+    private void startComplete(final long startNanos) {
+        if (ServiceContainerImpl.PROFILE_OUTPUT != null) {
+            writeProfileInfo('S', startNanos, System.nanoTime());
+        }
+        final ServiceContainerImpl container = primaryRegistration.getContainer();
+        if (container.isRecordingStartTimes()) {
+            container.setLastStartTime(primaryRegistration.getName(), System.nanoTime() - startNanos);
+        }
+    }
+
     private void writeProfileInfo(final char statusChar, final long startNanos, final long endNanos) {
         final ServiceRegistrationImpl primaryRegistration = this.primaryRegistration;
         final ServiceName name = primaryRegistration.getName();
@@ -1916,15 +2331,15 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
             for (ValueInjection<?> injection : injections) {
                 injection.getTarget().uninject();
             }
-            final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+            final ArrayList<Runnable> tasks = TaskBuffers.acquire();
             synchronized (ServiceControllerImpl.this) {
                 if (ServiceContainerImpl.PROFILE_OUTPUT != null) {
                     writeProfileInfo('X', startNanos, System.nanoTime());
                 }
                 // Subtract one for this task
-                asyncTasks --;
+                removeAsyncTask();
                 transition(tasks);
-                asyncTasks += tasks.size();
+                addAsyncTasks(tasks.size());
             }
             doExecute(tasks);
         }
@@ -1942,6 +2357,39 @@ final class ServiceControllerImpl<S> implements ServiceController<S>, Dependent
         }
     }
 
+    /**
+     * An immutable view of the state, mode and start exception of a controller.  Snapshots without a start exception
+     * are shared, so publishing one does not allocate.
+     */
+    private static final class StatusSnapshot {
+        private static final StatusSnapshot[][] SHARED;
+
+        static {
+            final Substate[] substates = Substate.values();
+            final Mode[] modes = Mode.values();
+            SHARED = new StatusSnapshot[substates.length][modes.length];
+            for (Substate substate : substates) {
+                for (Mode mode : modes) {
+                    SHARED[substate.ordinal()][mode.ordinal()] = new StatusSnapshot(substate, mode, null);
+                }
+            }
+        }
+
+        final Substate state;
+        final Mode mode;
+        final StartException startException;
+
+        private StatusSnapshot(final Substate state, final Mode mode, final StartException startException) {
+            this.state = state;
+            this.mode = mode;
+            this.startException = startException;
+        }
+
+        static StatusSnapshot of(final Substate state, final Mode mode, final StartException startException) {
+            return startException == null ? SHARED[state.ordinal()][mode.ordinal()] : new StatusSnapshot(state, mode, startException);
+        }
+    }
+
     enum Substate {
         NEW(State.DOWN),
         CANCELLED(State.REMOVED),
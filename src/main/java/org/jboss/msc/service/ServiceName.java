@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -32,7 +33,10 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -46,14 +50,78 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
     private static final long serialVersionUID = 2336190201880964151L;
     private static final Pattern validNameSegmentPattern = Pattern.compile("[\\u0000-\\u10FFFF&&[^\\u0000-\\u001F]&&[^\\u007F-\\u009F]&&[^ ]]+");
 
+    /**
+     * Whether names are interned, so that equal names created through this class are the same instance.  Set by the
+     * {@code jboss.msc.service.name.intern} system property.
+     */
+    private static final boolean INTERN;
+    private static final int INTERN_STRIPES = 16;
+    @SuppressWarnings("unchecked")
+    private static final Map<ServiceName, WeakReference<ServiceName>>[] internPool = new Map[INTERN_STRIPES];
+
+    /**
+     * The most recently parsed names, by their string form, or {@code null} if parsed names are not cached.  Its size
+     * is set by the {@code jboss.msc.service.name.parse-cache-size} system property.
+     */
+    private static final Map<String, ServiceName> parseCache;
+
+    static {
+        INTERN = Boolean.parseBoolean(AccessController.doPrivileged(new PrivilegedAction<String>() {
+            public String run() {
+                return System.getProperty("jboss.msc.service.name.intern");
+            }
+        }));
+        for (int i = 0; i < INTERN_STRIPES; i ++) {
+            internPool[i] = new WeakHashMap<ServiceName, WeakReference<ServiceName>>();
+        }
+        final int parseCacheSize = parseCacheSize(AccessController.doPrivileged(new PrivilegedAction<String>() {
+            public String run() {
+                return System.getProperty("jboss.msc.service.name.parse-cache-size");
+            }
+        }));
+        parseCache = parseCacheSize <= 0 ? null : new LinkedHashMap<String, ServiceName>(16, 0.75f, true) {
+            private static final long serialVersionUID = -3513447290584387245L;
+
+            protected boolean removeEldestEntry(final Map.Entry<String, ServiceName> eldest) {
+                return size() > parseCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Get the parse cache size from the value of its system property.  A missing or malformed value disables the
+     * cache rather than failing the initialization of this class.
+     *
+     * @param value the property value, or {@code null} if it is not set
+     * @return the parse cache size, {@code 0} if names are not to be cached
+     */
+    static int parseCacheSize(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     private final String name;
     private final ServiceName parent;
     private final transient int hashCode;
+    /**
+     * The canonical name, computed on first use.  A racy read only causes the name to be computed again.
+     */
+    private transient String canonicalName;
+    /**
+     * Whether this instance is the one in the intern pool for its name.
+     */
+    private transient boolean interned;
 
     /**
      * The root name "jboss".
      */
-    public static final ServiceName JBOSS = new ServiceName(null, "jboss");
+    public static final ServiceName JBOSS = of("jboss");
 
     /**
      * Create a ServiceName from a series of String parts.
@@ -84,11 +152,50 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
             if (part.isEmpty()) {
                 throw new IllegalArgumentException("Empty name segment is not allowed");
             }
-            current = new ServiceName(current, part);
+            current = create(current, part);
         }
         return current;
     }
 
+    private static ServiceName create(final ServiceName parent, final String name) {
+        return INTERN ? intern(new ServiceName(parent, name)) : new ServiceName(parent, name);
+    }
+
+    /**
+     * Get the instance in the intern pool which is equal to the given name, adding the name (with its parents
+     * interned as well) if there is none.  The pool only holds its names weakly.
+     *
+     * @param name the name
+     * @return the interned instance
+     */
+    static ServiceName intern(final ServiceName name) {
+        if (name.interned) {
+            return name;
+        }
+        final int hashCode = name.hashCode;
+        final Map<ServiceName, WeakReference<ServiceName>> stripe = internPool[(hashCode ^ hashCode >>> 16) & (INTERN_STRIPES - 1)];
+        synchronized (stripe) {
+            final WeakReference<ServiceName> ref = stripe.get(name);
+            final ServiceName existing = ref == null ? null : ref.get();
+            if (existing != null) {
+                return existing;
+            }
+        }
+        // intern the parent outside of the lock, as it may belong to the same stripe
+        final ServiceName parent = name.parent == null ? null : intern(name.parent);
+        final ServiceName canonical = parent == name.parent ? name : new ServiceName(parent, name.name);
+        synchronized (stripe) {
+            final WeakReference<ServiceName> ref = stripe.get(canonical);
+            final ServiceName existing = ref == null ? null : ref.get();
+            if (existing != null) {
+                return existing;
+            }
+            canonical.interned = true;
+            stripe.put(canonical, new WeakReference<ServiceName>(canonical));
+            return canonical;
+        }
+    }
+
     private ServiceName(final ServiceName parent, final String name) {
         this.name = name;
         this.parent = parent;
@@ -221,7 +328,7 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
         if (o == this) {
             return true;
         }
-        if (o == null || hashCode != o.hashCode || ! name.equals(o.name)) {
+        if (o == null || hashCode != o.hashCode || interned && o.interned || ! name.equals(o.name)) {
             return false;
         }
 
@@ -256,7 +363,11 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
      * @return the canonical name
      */
     public String getCanonicalName() {
-        return getCanonicalName(new StringBuilder()).toString();
+        String canonicalName = this.canonicalName;
+        if (canonicalName == null) {
+            this.canonicalName = canonicalName = getCanonicalName(new StringBuilder()).toString();
+        }
+        return canonicalName;
     }
 
     /**
@@ -276,12 +387,68 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
      * (0) and not as an octal escape sequence.  Control characters are not allowed in any part of a name
      * and must be escaped in a quoted section if they are present in the service name string.  Whitespace characters
      * are allowed only in a quoted section.
+     * <p>
+     * If the {@code jboss.msc.service.name.parse-cache-size} system property is set, that many of the most recently
+     * parsed names are cached, so that names which are parsed repeatedly, as by management operations, are only
+     * parsed once.
      *
      * @param original the string form of a service name
      * @return a {@code ServiceName} instance
      * @throws IllegalArgumentException if the original is not valid
      */
     public static ServiceName parse(String original) throws IllegalArgumentException {
+        final Map<String, ServiceName> parseCache = ServiceName.parseCache;
+        if (parseCache == null) {
+            return parseUnquoted(original);
+        }
+        ServiceName name;
+        synchronized (parseCache) {
+            name = parseCache.get(original);
+        }
+        if (name == null) {
+            name = parseUnquoted(original);
+            synchronized (parseCache) {
+                parseCache.put(original, name);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Parse a name made of unquoted sections only, in a single pass which creates the segments directly from the
+     * original string.  Anything else, including an invalid name, is left to {@link #parseQuoted(String)}, so that
+     * both accept the same names and report the same errors.
+     *
+     * @param original the string form of a service name
+     * @return a {@code ServiceName} instance
+     * @throws IllegalArgumentException if the original is not valid
+     */
+    private static ServiceName parseUnquoted(final String original) throws IllegalArgumentException {
+        if (original.indexOf('"') != -1) {
+            return parseQuoted(original);
+        }
+        final int originalLength = original.length();
+        ServiceName current = null;
+        int start = 0;
+        for (int i = 0; i < originalLength; i ++) {
+            final char c = original.charAt(i);
+            if (c == '.') {
+                if (i == start) {
+                    return parseQuoted(original);
+                }
+                current = create(current, original.substring(start, i));
+                start = i + 1;
+            } else if (c < 0x80 ? c <= ' ' || c == '"' || c == '\\' || c == 0x7f : Character.isISOControl(c) || Character.isWhitespace(c)) {
+                return parseQuoted(original);
+            }
+        }
+        if (start == originalLength) {
+            return parseQuoted(original);
+        }
+        return create(current, original.substring(start));
+    }
+
+    private static ServiceName parseQuoted(final String original) throws IllegalArgumentException {
         final int originalLength = original.length();
         final List<String> segments = new ArrayList<String>();
         final StringBuilder builder = new StringBuilder();
@@ -479,6 +646,10 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
     }
 
     private StringBuilder getCanonicalName(StringBuilder target) {
+        final String canonicalName = this.canonicalName;
+        if (canonicalName != null) {
+            return target.append(canonicalName);
+        }
         final ServiceName parent = this.parent;
         if (parent != null) {
             parent.getCanonicalName(target);
@@ -602,4 +773,8 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
             throw e2;
         }
     }
+
+    private Object readResolve() {
+        return INTERN ? intern(this) : this;
+    }
 }
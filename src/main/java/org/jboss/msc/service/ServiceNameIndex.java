@@ -0,0 +1,174 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A trie of the registrations of a container, keyed by the segments of their names, so that the registrations under a
+ * given name can be found without scanning the whole registry.  Each segment of each registered name has a node,
+ * whether or not the name ending there is registered itself.
+ * <p>
+ * Lookups do not lock.  Changes are serialized on the index, and a lookup which runs concurrently with them sees each
+ * registration either added or not.
+ */
+final class ServiceNameIndex {
+
+    private final Node root = new Node();
+
+    /**
+     * Add a newly created registration.
+     *
+     * @param registration the registration
+     */
+    synchronized void add(final ServiceRegistrationImpl registration) {
+        getOrCreateNode(registration.getName()).registration = registration;
+    }
+
+    /**
+     * Remove a reclaimed registration, along with any nodes left with neither a registration nor children.
+     *
+     * @param registration the registration
+     */
+    synchronized void remove(final ServiceRegistrationImpl registration) {
+        remove(registration.getName(), registration);
+    }
+
+    private boolean remove(final ServiceName name, final ServiceRegistrationImpl registration) {
+        final Node parent = name.getParent() == null ? root : getNode(name.getParent());
+        if (parent == null) {
+            return false;
+        }
+        final Map<String, Node> children = parent.children;
+        if (children == null) {
+            return false;
+        }
+        final String simpleName = name.getSimpleName();
+        final Node node = children.get(simpleName);
+        if (node == null) {
+            return false;
+        }
+        if (registration != null) {
+            if (node.registration != registration) {
+                return false;
+            }
+            node.registration = null;
+        }
+        if (node.registration == null && (node.children == null || node.children.isEmpty())) {
+            children.remove(simpleName);
+            if (name.getParent() != null) {
+                remove(name.getParent(), null);
+            }
+        }
+        return true;
+    }
+
+    private Node getOrCreateNode(final ServiceName name) {
+        final Node parent = name.getParent() == null ? root : getOrCreateNode(name.getParent());
+        Map<String, Node> children = parent.children;
+        if (children == null) {
+            parent.children = children = new UnlockedReadHashMap<String, Node>(4);
+        }
+        final String simpleName = name.getSimpleName();
+        Node node = children.get(simpleName);
+        if (node == null) {
+            node = new Node();
+            children.put(simpleName, node);
+        }
+        return node;
+    }
+
+    private Node getNode(final ServiceName name) {
+        final Node parent = name.getParent() == null ? root : getNode(name.getParent());
+        if (parent == null) {
+            return null;
+        }
+        final Map<String, Node> children = parent.children;
+        return children == null ? null : children.get(name.getSimpleName());
+    }
+
+    /**
+     * Get the registrations of {@code name} and of all the names under it.
+     *
+     * @param name the name
+     * @return the registrations, in no particular order
+     */
+    List<ServiceRegistrationImpl> getRegistrations(final ServiceName name) {
+        final List<ServiceRegistrationImpl> registrations = new ArrayList<ServiceRegistrationImpl>();
+        final Node top = getNode(name);
+        if (top == null) {
+            return registrations;
+        }
+        final Deque<Node> remaining = new ArrayDeque<Node>();
+        Node node = top;
+        do {
+            final ServiceRegistrationImpl registration = node.registration;
+            if (registration != null) {
+                registrations.add(registration);
+            }
+            final Map<String, Node> children = node.children;
+            if (children != null) {
+                for (Node child : children.values()) {
+                    remaining.push(child);
+                }
+            }
+        } while ((node = remaining.pollFirst()) != null);
+        return registrations;
+    }
+
+    /**
+     * Get the distinct services installed under {@code name}, including the service named {@code name} itself.  A
+     * service is included if any of its names is under {@code name}.
+     *
+     * @param name the name
+     * @return the services
+     */
+    List<ServiceController<?>> getServices(final ServiceName name) {
+        final List<ServiceController<?>> services = new ArrayList<ServiceController<?>>();
+        final Set<ServiceControllerImpl<?>> seen = new IdentityHashSet<ServiceControllerImpl<?>>();
+        for (ServiceRegistrationImpl registration : getRegistrations(name)) {
+            final ServiceControllerImpl<?> instance = registration.getInstance();
+            if (instance != null && seen.add(instance)) {
+                services.add(instance);
+            }
+        }
+        return services;
+    }
+
+    private static final class Node {
+        /**
+         * The registration of this node's name, or {@code null} if it has none.  Written under the index lock.
+         */
+        private volatile ServiceRegistrationImpl registration;
+        /**
+         * The nodes of the names one segment longer, or {@code null} if there are none yet.  Written under the index
+         * lock.
+         */
+        private volatile Map<String, Node> children;
+    }
+}
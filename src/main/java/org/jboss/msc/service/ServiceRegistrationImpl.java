@@ -23,6 +23,7 @@
 package org.jboss.msc.service;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import static java.lang.Thread.holdsLock;
 
@@ -46,18 +47,43 @@ final class ServiceRegistrationImpl implements Dependency {
      * The set of dependents on this registration.
      */
     private final IdentityHashSet<Dependent> dependents = new IdentityHashSet<Dependent>(0);
+    /**
+     * An immutable, compact copy of {@link #dependents}, or {@code null} if it has to be rebuilt.  Guarded by
+     * {@link #dependents} for writes.
+     */
+    private volatile Dependent[] dependentsSnapshot = NO_DEPENDENTS;
+
+    private static final Dependent[] NO_DEPENDENTS = new Dependent[0];
 
     // Mutable properties
 
     /**
-     * The current instance.
+     * The current instance.  Only written under the registration lock, but read without it by lookups and value
+     * retrieval.
      */
-    private ServiceControllerImpl<?> instance;
+    private volatile ServiceControllerImpl<?> instance;
     /**
      * The number of dependent instances which place a demand-to-start on this registration.  If this value is >0,
      * propagate a demand to the instance, if any.
      */
     private int demandedByCount;
+    /**
+     * Demands which have been added (or, if negative, removed) but not yet applied to {@link #demandedByCount}.
+     */
+    private volatile int pendingDemands;
+    /**
+     * {@code 1} while a thread is applying the pending demands.
+     */
+    private volatile int applyingDemands;
+    /**
+     * The number of installations which are using this registration, or -1 once this registration has been reclaimed,
+     * after which it can no longer be used and is removed from the registry.
+     */
+    private volatile int pins;
+
+    private static final AtomicIntegerFieldUpdater<ServiceRegistrationImpl> pendingDemandsUpdater = AtomicIntegerFieldUpdater.newUpdater(ServiceRegistrationImpl.class, "pendingDemands");
+    private static final AtomicIntegerFieldUpdater<ServiceRegistrationImpl> applyingDemandsUpdater = AtomicIntegerFieldUpdater.newUpdater(ServiceRegistrationImpl.class, "applyingDemands");
+    private static final AtomicIntegerFieldUpdater<ServiceRegistrationImpl> pinsUpdater = AtomicIntegerFieldUpdater.newUpdater(ServiceRegistrationImpl.class, "pins");
 
     ServiceRegistrationImpl(final ServiceContainerImpl container, final ServiceName name) {
         this.container = container;
@@ -73,6 +99,27 @@ final class ServiceRegistrationImpl implements Dependency {
         return dependents;
     }
 
+    /**
+     * Returns an immutable array of the dependents of this registration.  The same array instance is returned
+     * until a dependent is added or removed, so callers may share it freely but must never modify it.
+     *
+     * @return the dependents array
+     */
+    Dependent[] getDependentsSnapshot() {
+        Dependent[] snapshot = dependentsSnapshot;
+        if (snapshot == null) {
+            synchronized (dependents) {
+                snapshot = dependentsSnapshot;
+                if (snapshot == null) {
+                    final int size = dependents.size();
+                    snapshot = size == 0 ? NO_DEPENDENTS : dependents.toArray(new Dependent[size], 0, size);
+                    dependentsSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
     /**
      * Add a dependent to this controller.
      *
@@ -83,7 +130,7 @@ final class ServiceRegistrationImpl implements Dependency {
         assert !holdsLock(this);
         assert !holdsLock(dependent);
         final ServiceControllerImpl<?> instance;
-        final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+        ArrayList<Runnable> tasks = TaskBuffers.acquire();
         synchronized (this) {
             synchronized (dependents) {
                 if (dependents.contains(dependent)) {
@@ -95,19 +142,22 @@ final class ServiceRegistrationImpl implements Dependency {
                 dependent.immediateDependencyUninstalled();
                 synchronized (dependents) {
                     dependents.add(dependent);
+                    dependentsSnapshot = null;
                 }
+                TaskBuffers.release(tasks);
                 return;
             }
             synchronized (instance) {
                 instance.newDependent(dependent, tasks);
                 synchronized (dependents) {
                     dependents.add(dependent);
+                    dependentsSnapshot = null;
                 }
                 instance.addAsyncTasks(tasks.size() + 1);
             }
         }
         instance.doExecute(tasks);
-        tasks.clear();
+        tasks = TaskBuffers.acquire();
         synchronized(this) {
             synchronized (instance) {
                 instance.removeAsyncTask();
@@ -127,8 +177,64 @@ final class ServiceRegistrationImpl implements Dependency {
     public void removeDependent(final Dependent dependent) {
         assert ! holdsLock(this);
         assert ! holdsLock(dependent);
+        final boolean empty;
         synchronized (dependents) {
-            dependents.remove(dependent);
+            if (dependents.remove(dependent)) {
+                dependentsSnapshot = null;
+            }
+            empty = dependents.isEmpty();
+        }
+        if (empty && instance == null) {
+            container.reclaim(this);
+        }
+    }
+
+    /**
+     * Prevent this registration from being reclaimed until {@link #unpin()} is called.
+     *
+     * @return {@code false} if this registration has already been reclaimed and must not be used
+     */
+    boolean pin() {
+        int pins;
+        do {
+            pins = this.pins;
+            if (pins < 0) {
+                return false;
+            }
+        } while (! pinsUpdater.compareAndSet(this, pins, pins + 1));
+        return true;
+    }
+
+    /**
+     * Release a pin taken by {@link #pin()}.
+     *
+     * @return {@code true} if no pins are left
+     */
+    boolean unpin() {
+        return pinsUpdater.decrementAndGet(this) == 0;
+    }
+
+    /**
+     * Mark this registration reclaimed if nothing uses it: it has no instance, no dependents, no demands and no pins.
+     * Once this returns {@code true}, {@link #pin()} fails and the registration must be removed from the registry.
+     *
+     * @return {@code true} if the registration was reclaimed
+     */
+    boolean reclaim() {
+        assert ! holdsLock(this);
+        if (instance != null || pins != 0) {
+            return false;
+        }
+        synchronized (this) {
+            if (instance != null || demandedByCount != 0 || pendingDemands != 0) {
+                return false;
+            }
+            synchronized (dependents) {
+                if (! dependents.isEmpty()) {
+                    return false;
+                }
+            }
+            return pinsUpdater.compareAndSet(this, 0, -1);
         }
     }
 
@@ -165,10 +271,15 @@ final class ServiceRegistrationImpl implements Dependency {
             }
             this.instance = null;
         }
+        final boolean empty;
         synchronized (dependents) {
             for (Dependent dependent: dependents) {
                 dependent.immediateDependencyUninstalled();
             }
+            empty = dependents.isEmpty();
+        }
+        if (empty) {
+            container.reclaim(this);
         }
     }
 
@@ -187,13 +298,11 @@ final class ServiceRegistrationImpl implements Dependency {
 
     @Override
     public Object getValue() throws IllegalStateException {
-        synchronized (this) {
-            final ServiceControllerImpl<?> instance = this.instance;
-            if (instance == null) {
-                throw new IllegalStateException("Service is not installed");
-            } else {
-                return instance.getValue();
-            }
+        final ServiceControllerImpl<?> instance = this.instance;
+        if (instance == null) {
+            throw new IllegalStateException("Service is not installed");
+        } else {
+            return instance.getValue();
         }
     }
 
@@ -213,29 +322,63 @@ final class ServiceRegistrationImpl implements Dependency {
 
     @Override
     public void addDemand() {
-        synchronized (this) {
-            demandedByCount++;
-            final ServiceControllerImpl<?> instance = this.instance;
-            if (instance != null) {
-                instance.addDemand();
-            }
-        }
+        addDemands(1);
     }
 
     @Override
     public void removeDemand() {
-        synchronized (this) {
-            demandedByCount--;
-            final ServiceControllerImpl<?> instance = this.instance;
-            if (instance != null) {
-                instance.removeDemand();
+        removeDemands(1);
+    }
+
+    @Override
+    public void addDemands(final int count) {
+        pendingDemandsUpdater.getAndAdd(this, count);
+        applyPendingDemands();
+    }
+
+    @Override
+    public void removeDemands(final int count) {
+        pendingDemandsUpdater.getAndAdd(this, -count);
+        applyPendingDemands();
+    }
+
+    /**
+     * Apply the pending demands.  When many dependents change their demand at the same time, only one of them takes
+     * the registration lock and forwards the sum of all their changes to the instance; the others just leave their
+     * change behind for it.
+     */
+    private void applyPendingDemands() {
+        assert ! holdsLock(this);
+        boolean undemanded = false;
+        // re-check after releasing the flag, in case a change was left behind just before
+        while (pendingDemands != 0 && applyingDemandsUpdater.compareAndSet(this, 0, 1)) {
+            try {
+                final int delta = pendingDemandsUpdater.getAndSet(this, 0);
+                if (delta != 0) {
+                    synchronized (this) {
+                        demandedByCount += delta;
+                        final ServiceControllerImpl<?> instance = this.instance;
+                        if (instance != null) {
+                            if (delta > 0) {
+                                instance.addDemands(delta);
+                            } else {
+                                instance.removeDemands(-delta);
+                            }
+                        }
+                        undemanded = demandedByCount == 0 && instance == null;
+                    }
+                }
+            } finally {
+                applyingDemands = 0;
             }
         }
+        if (undemanded) {
+            // the last dependent may have been removed while this demand was still pending
+            container.reclaim(this);
+        }
     }
 
     ServiceControllerImpl<?> getInstance() {
-        synchronized (this) {
-            return instance;
-        }
+        return instance;
     }
 }
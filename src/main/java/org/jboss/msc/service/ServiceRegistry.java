@@ -55,4 +55,15 @@ public interface ServiceRegistry {
      * @return the list
      */
     List<ServiceName> getServiceNames();
+
+    /**
+     * Get the services installed in this registry under a name, such as all the services of a deployment.  A service
+     * is included if {@code parent} {@linkplain ServiceName#isParentOf(ServiceName) is a parent of} its name or of any
+     * of its aliases.  The registry is indexed by name, so this does not scan the whole registry.
+     *
+     * @param parent the name
+     * @return the distinct service controllers, in no particular order
+     * @throws IllegalArgumentException if {@code parent} is {@code null}
+     */
+    List<ServiceController<?>> getServices(ServiceName parent) throws IllegalArgumentException;
 }
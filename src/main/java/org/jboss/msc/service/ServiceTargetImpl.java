@@ -25,6 +25,7 @@ package org.jboss.msc.service;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.jboss.msc.value.ImmediateValue;
@@ -188,6 +189,22 @@ class ServiceTargetImpl implements ServiceTarget {
         return parent.install(serviceBuilder);
     }
 
+    /**
+     * Install {@code serviceBuilders} in this target as a unit: either all of them are installed, or none.
+     *
+     * @param serviceBuilders serviceBuilders created by this ServiceTarget
+     *
+     * @return the installed service controllers, in the order of {@code serviceBuilders}
+     *
+     * @throws ServiceRegistryException if a service registry issue occurred during installation
+     */
+    List<ServiceController<?>> installAll(List<ServiceBuilderImpl<?>> serviceBuilders) throws ServiceRegistryException {
+        for (ServiceBuilderImpl<?> serviceBuilder : serviceBuilders) {
+            apply(serviceBuilder);
+        }
+        return parent.installAll(serviceBuilders);
+    }
+
     /**
      * Returns the serviceRegistry that contains all services installed by this target.
      * 
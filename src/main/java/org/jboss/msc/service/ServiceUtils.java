@@ -55,10 +55,12 @@ public final class ServiceUtils {
      */
     public static void undeployAll(final Runnable completeTask, final List<ServiceController<?>> controllers) {
         final MultipleRemoveListener<Runnable> listener = MultipleRemoveListener.create(completeTask);
-        for (ServiceController<?> controller : controllers == null ? Collections.<ServiceController<?>>emptyList() : controllers) {
-            if (controller != null) {
-                controller.setMode(ServiceController.Mode.REMOVE);
-                controller.addListener(listener);
+        if (controllers != null) {
+            ServiceControllerImpl.setModes(null, controllers, ServiceController.Mode.REMOVE);
+            for (ServiceController<?> controller : controllers) {
+                if (controller != null) {
+                    controller.addListener(listener);
+                }
             }
         }
         listener.done();
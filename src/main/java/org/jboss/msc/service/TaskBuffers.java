@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service;
+
+import java.util.ArrayList;
+
+/**
+ * Per-thread pool of the task lists used by the controller state machine.  Transitions nest (a task which is run
+ * inline may itself compute a transition), so each thread keeps a small stack of free lists rather than a single one.
+ * A list which is never released is simply garbage collected.
+ */
+final class TaskBuffers {
+
+    /**
+     * The maximum number of free lists kept per thread.
+     */
+    private static final int MAX_FREE = 4;
+    /**
+     * Lists which held more tasks than this are not recycled, so that a rare large transition does not pin a large
+     * array to the thread.
+     */
+    private static final int MAX_RECYCLED_SIZE = 64;
+
+    private static final ThreadLocal<TaskBuffers> BUFFERS = new ThreadLocal<TaskBuffers>() {
+        protected TaskBuffers initialValue() {
+            return new TaskBuffers();
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private final ArrayList<Runnable>[] free = new ArrayList[MAX_FREE];
+    private int freeCount;
+
+    private TaskBuffers() {
+    }
+
+    /**
+     * Get an empty task list for the current thread.
+     *
+     * @return the task list
+     */
+    static ArrayList<Runnable> acquire() {
+        final TaskBuffers buffers = BUFFERS.get();
+        final int freeCount = buffers.freeCount;
+        if (freeCount == 0) {
+            return new ArrayList<Runnable>(16);
+        }
+        final ArrayList<Runnable> list = buffers.free[freeCount - 1];
+        buffers.free[freeCount - 1] = null;
+        buffers.freeCount = freeCount - 1;
+        return list;
+    }
+
+    /**
+     * Return a task list to the pool of the current thread.  The caller must not use the list afterwards.
+     *
+     * @param list the task list, or {@code null} for none
+     */
+    static void release(final ArrayList<Runnable> list) {
+        if (list == null) {
+            return;
+        }
+        final int size = list.size();
+        if (size > MAX_RECYCLED_SIZE) {
+            return;
+        }
+        final TaskBuffers buffers = BUFFERS.get();
+        final int freeCount = buffers.freeCount;
+        if (freeCount == MAX_FREE) {
+            return;
+        }
+        list.clear();
+        buffers.free[freeCount] = list;
+        buffers.freeCount = freeCount + 1;
+    }
+}
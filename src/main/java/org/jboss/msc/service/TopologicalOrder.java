@@ -0,0 +1,457 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A topological order of the installed services of a container, maintained incrementally as services are installed
+ * so that each installation only examines the part of the graph whose order it affects (Pearce &amp; Kelly, "A Dynamic
+ * Topological Sort Algorithm for Directed Acyclic Graphs").  A service precedes its dependents and its children.
+ * <p>
+ * Orders are sparse and distinct; a new service is placed in the gap between its predecessors and successors when
+ * there is one, clear of the orders of any unrelated services in that gap.  Distinct orders can always be exchanged
+ * among the services that have to move, so the whole order is only spread out again when a gap is exhausted.
+ * Otherwise the services between the two bounds which are reachable from the new service's successors are moved
+ * after the ones which reach its predecessors, and if that region wraps back around to the new service, the
+ * installation would introduce a dependency cycle.  When a gap is exhausted all orders are spread out again.
+ * <p>
+ * Services which have not finished installing yet are left unordered and ignored; each of them is checked in turn
+ * when it gets here.
+ */
+final class TopologicalOrder {
+
+    /**
+     * The order of a service which has not been placed (yet).
+     */
+    static final long UNORDERED = Long.MIN_VALUE;
+
+    /**
+     * The spacing between consecutive services after the orders are spread out.
+     */
+    private static final long GAP = 1L << 20;
+
+    private static final Comparator<ServiceControllerImpl<?>> BY_ORDER = new Comparator<ServiceControllerImpl<?>>() {
+        public int compare(final ServiceControllerImpl<?> o1, final ServiceControllerImpl<?> o2) {
+            final long order1 = o1.getTopologicalOrder();
+            final long order2 = o2.getTopologicalOrder();
+            return order1 < order2 ? -1 : order1 == order2 ? 0 : 1;
+        }
+    };
+
+    private final Collection<ServiceRegistrationImpl> registrations;
+    /**
+     * The orders of the placed services.
+     */
+    private final TreeSet<Long> orders = new TreeSet<Long>();
+
+    TopologicalOrder(final Collection<ServiceRegistrationImpl> registrations) {
+        this.registrations = registrations;
+    }
+
+    /**
+     * Place a newly installed service in the order.  The service must already be linked to its dependencies, its
+     * parent and its registrations.
+     *
+     * @param instance the service being installed
+     * @return {@code true} if the service was placed, {@code false} if it is part of a dependency cycle, in which
+     *         case the order is left unchanged
+     */
+    synchronized boolean insert(final ServiceControllerImpl<?> instance) {
+        assert instance.getTopologicalOrder() == UNORDERED;
+        final List<ServiceControllerImpl<?>> predecessors = new ArrayList<ServiceControllerImpl<?>>();
+        final List<ServiceControllerImpl<?>> successors = new ArrayList<ServiceControllerImpl<?>>();
+        addPredecessors(instance, predecessors);
+        addSuccessors(instance, successors);
+        if (successors.contains(instance)) {
+            // depends on itself
+            return false;
+        }
+        for (;;) {
+            long lower = UNORDERED;
+            for (ServiceControllerImpl<?> predecessor : predecessors) {
+                lower = Math.max(lower, predecessor.getTopologicalOrder());
+            }
+            long upper = Long.MAX_VALUE;
+            for (ServiceControllerImpl<?> successor : successors) {
+                final long order = successor.getTopologicalOrder();
+                if (order != UNORDERED) {
+                    upper = Math.min(upper, order);
+                }
+            }
+            if (lower < upper) {
+                if (place(instance, lower, upper)) {
+                    return true;
+                }
+                renumber();
+                continue;
+            }
+            // some successors precede some predecessors; find what has to move, or a cycle
+            final List<ServiceControllerImpl<?>> forward = new ArrayList<ServiceControllerImpl<?>>();
+            if (! searchForward(instance, successors, lower, forward)) {
+                return false;
+            }
+            final List<ServiceControllerImpl<?>> backward = searchBackward(predecessors, upper);
+            if (! reorder(backward, forward)) {
+                renumber();
+            }
+        }
+    }
+
+    /**
+     * Place a batch of newly installed services in the order, all or none.  The batch is first sorted among itself so
+     * that most of its services find their predecessors already placed and just go after them.
+     *
+     * @param instances the services being installed
+     * @return {@code null} if all the services were placed, or else a service of the batch on a dependency cycle, in
+     *         which case none of them is placed
+     */
+    synchronized ServiceControllerImpl<?> insertAll(final List<ServiceControllerImpl<?>> instances) {
+        final int size = instances.size();
+        final Map<ServiceControllerImpl<?>, Integer> indexes = new IdentityHashMap<ServiceControllerImpl<?>, Integer>(size);
+        for (int i = 0; i < size; i ++) {
+            indexes.put(instances.get(i), Integer.valueOf(i));
+        }
+        // successors within the batch, and the number of predecessors within the batch
+        final int[][] successorIndexes = new int[size][];
+        final int[] predecessorCounts = new int[size];
+        final List<ServiceControllerImpl<?>> successors = new ArrayList<ServiceControllerImpl<?>>();
+        for (int i = 0; i < size; i ++) {
+            successors.clear();
+            addSuccessors(instances.get(i), successors);
+            final int[] found = new int[successors.size()];
+            int count = 0;
+            for (ServiceControllerImpl<?> successor : successors) {
+                final Integer index = indexes.get(successor);
+                if (index != null) {
+                    found[count ++] = index.intValue();
+                    predecessorCounts[index.intValue()] ++;
+                }
+            }
+            successorIndexes[i] = count == found.length ? found : Arrays.copyOf(found, count);
+        }
+        final int[] sorted = new int[size];
+        int sortedCount = 0;
+        for (int i = 0; i < size; i ++) {
+            if (predecessorCounts[i] == 0) {
+                sorted[sortedCount ++] = i;
+            }
+        }
+        for (int next = 0; next < sortedCount; next ++) {
+            for (int successor : successorIndexes[sorted[next]]) {
+                if (-- predecessorCounts[successor] == 0) {
+                    sorted[sortedCount ++] = successor;
+                }
+            }
+        }
+        if (sortedCount < size) {
+            // cycle within the batch
+            return instances.get(findCycleMember(successorIndexes, predecessorCounts));
+        }
+        for (int i = 0; i < size; i ++) {
+            final ServiceControllerImpl<?> instance = instances.get(sorted[i]);
+            if (! insert(instance)) {
+                while (i > 0) {
+                    remove(instances.get(sorted[-- i]));
+                }
+                return instance;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find a service on a dependency cycle within a batch that could not be sorted.  Each service left unsorted waits on
+     * another one left unsorted, so walking back from any of them for as many steps as the batch has services ends up
+     * on a cycle.
+     *
+     * @param successorIndexes the successors of each service within the batch
+     * @param predecessorCounts the number of unsorted predecessors of each service, nonzero for the unsorted ones
+     * @return the index of a service on a cycle
+     */
+    private static int findCycleMember(final int[][] successorIndexes, final int[] predecessorCounts) {
+        final int size = predecessorCounts.length;
+        int current = 0;
+        while (predecessorCounts[current] == 0) {
+            current ++;
+        }
+        for (int step = 0; step < size; step ++) {
+            search: for (int i = 0; i < size; i ++) {
+                if (predecessorCounts[i] != 0) {
+                    for (int successor : successorIndexes[i]) {
+                        if (successor == current) {
+                            current = i;
+                            break search;
+                        }
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Take a removed service out of the order.
+     *
+     * @param instance the removed service
+     */
+    synchronized void remove(final ServiceControllerImpl<?> instance) {
+        final long order = instance.getTopologicalOrder();
+        if (order != UNORDERED) {
+            orders.remove(Long.valueOf(order));
+            instance.setTopologicalOrder(UNORDERED);
+        }
+    }
+
+    /**
+     * Assign an order strictly between two bounds which no other service has.  An open bound is taken to be the
+     * first or last order, so that unrelated services go one after the other; otherwise the order goes after any
+     * other order between the bounds.
+     *
+     * @return {@code false} if there is no room between the bounds
+     */
+    private boolean place(final ServiceControllerImpl<?> instance, long lower, long upper) {
+        if (upper == Long.MAX_VALUE) {
+            if (! orders.isEmpty()) {
+                lower = Math.max(lower, orders.last().longValue());
+            }
+        } else if (lower == UNORDERED) {
+            upper = Math.min(upper, orders.first().longValue());
+        } else {
+            final Long taken = orders.lower(Long.valueOf(upper));
+            if (taken.longValue() > lower) {
+                lower = taken.longValue();
+            }
+        }
+        final long order;
+        if (lower == UNORDERED) {
+            if (upper == Long.MAX_VALUE) {
+                order = 0L;
+            } else if (upper > UNORDERED + GAP) {
+                order = upper - GAP;
+            } else {
+                return false;
+            }
+        } else if (upper == Long.MAX_VALUE) {
+            if (lower < Long.MAX_VALUE - GAP) {
+                order = lower + GAP;
+            } else {
+                return false;
+            }
+        } else if (upper - 1 > lower) {
+            // the difference may not fit in a signed long
+            order = lower + ((upper - lower) >>> 1);
+        } else {
+            return false;
+        }
+        instance.setTopologicalOrder(order);
+        orders.add(Long.valueOf(order));
+        return true;
+    }
+
+    /**
+     * Collect the ordered services which are reachable from the successors of {@code instance} that are placed no
+     * later than {@code lower}.
+     *
+     * @return {@code false} if {@code instance} itself is reachable
+     */
+    private static boolean searchForward(final ServiceControllerImpl<?> instance, final List<ServiceControllerImpl<?>> successors, final long lower, final List<ServiceControllerImpl<?>> found) {
+        final Set<ServiceControllerImpl<?>> visited = new IdentityHashSet<ServiceControllerImpl<?>>();
+        final Deque<ServiceControllerImpl<?>> remaining = new ArrayDeque<ServiceControllerImpl<?>>();
+        final List<ServiceControllerImpl<?>> next = new ArrayList<ServiceControllerImpl<?>>();
+        for (ServiceControllerImpl<?> successor : successors) {
+            final long order = successor.getTopologicalOrder();
+            if (order != UNORDERED && order <= lower && visited.add(successor)) {
+                remaining.push(successor);
+            }
+        }
+        ServiceControllerImpl<?> current;
+        while ((current = remaining.pollFirst()) != null) {
+            found.add(current);
+            next.clear();
+            addSuccessors(current, next);
+            for (ServiceControllerImpl<?> successor : next) {
+                if (successor == instance) {
+                    return false;
+                }
+                final long order = successor.getTopologicalOrder();
+                if (order != UNORDERED && order <= lower && visited.add(successor)) {
+                    remaining.push(successor);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collect the ordered services which reach the predecessors of the new service and are placed no earlier than
+     * {@code upper}.
+     */
+    private static List<ServiceControllerImpl<?>> searchBackward(final List<ServiceControllerImpl<?>> predecessors, final long upper) {
+        final List<ServiceControllerImpl<?>> found = new ArrayList<ServiceControllerImpl<?>>();
+        final Set<ServiceControllerImpl<?>> visited = new IdentityHashSet<ServiceControllerImpl<?>>();
+        final Deque<ServiceControllerImpl<?>> remaining = new ArrayDeque<ServiceControllerImpl<?>>();
+        final List<ServiceControllerImpl<?>> next = new ArrayList<ServiceControllerImpl<?>>();
+        for (ServiceControllerImpl<?> predecessor : predecessors) {
+            if (predecessor.getTopologicalOrder() >= upper && visited.add(predecessor)) {
+                remaining.push(predecessor);
+            }
+        }
+        ServiceControllerImpl<?> current;
+        while ((current = remaining.pollFirst()) != null) {
+            found.add(current);
+            next.clear();
+            addPredecessors(current, next);
+            for (ServiceControllerImpl<?> predecessor : next) {
+                if (predecessor.getTopologicalOrder() >= upper && visited.add(predecessor)) {
+                    remaining.push(predecessor);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Redistribute the orders held by both sets so that every service of {@code backward} precedes every service of
+     * {@code forward}, keeping the relative order within each set.  Services of {@code forward} only move later and
+     * services of {@code backward} only move earlier, so the order stays consistent with every other edge.
+     *
+     * @return {@code false} if the orders could not be redistributed because some of them are equal
+     */
+    private static boolean reorder(final List<ServiceControllerImpl<?>> backward, final List<ServiceControllerImpl<?>> forward) {
+        final int backwardSize = backward.size();
+        final long[] pool = new long[backwardSize + forward.size()];
+        int i = 0;
+        for (ServiceControllerImpl<?> controller : backward) {
+            pool[i++] = controller.getTopologicalOrder();
+        }
+        for (ServiceControllerImpl<?> controller : forward) {
+            pool[i++] = controller.getTopologicalOrder();
+        }
+        Arrays.sort(pool);
+        for (i = 1; i < pool.length; i ++) {
+            if (pool[i - 1] == pool[i]) {
+                return false;
+            }
+        }
+        Collections.sort(backward, BY_ORDER);
+        Collections.sort(forward, BY_ORDER);
+        i = 0;
+        for (ServiceControllerImpl<?> controller : backward) {
+            controller.setTopologicalOrder(pool[i++]);
+        }
+        for (ServiceControllerImpl<?> controller : forward) {
+            controller.setTopologicalOrder(pool[i++]);
+        }
+        return true;
+    }
+
+    /**
+     * Spread the orders of all placed services out evenly, keeping their relative order.
+     */
+    private void renumber() {
+        final Set<ServiceControllerImpl<?>> seen = new IdentityHashSet<ServiceControllerImpl<?>>();
+        final List<ServiceControllerImpl<?>> placed = new ArrayList<ServiceControllerImpl<?>>();
+        for (ServiceRegistrationImpl registration : registrations) {
+            final ServiceControllerImpl<?> controller = registration.getInstance();
+            if (controller != null && controller.getTopologicalOrder() != UNORDERED && seen.add(controller)) {
+                placed.add(controller);
+            }
+        }
+        Collections.sort(placed, BY_ORDER);
+        orders.clear();
+        long order = 0L;
+        for (ServiceControllerImpl<?> controller : placed) {
+            order += GAP;
+            controller.setTopologicalOrder(order);
+            orders.add(Long.valueOf(order));
+        }
+    }
+
+    /**
+     * Add the installed services that {@code controller} depends on, and its parent.
+     */
+    private static void addPredecessors(final ServiceControllerImpl<?> controller, final List<ServiceControllerImpl<?>> predecessors) {
+        for (Dependency dependency : controller.getDependencyArray()) {
+            while (dependency instanceof OptionalDependency) {
+                dependency = ((OptionalDependency) dependency).getOptionalDependency();
+            }
+            if (dependency instanceof ServiceRegistrationImpl) {
+                final ServiceControllerImpl<?> instance = ((ServiceRegistrationImpl) dependency).getInstance();
+                if (instance != null && instance.getTopologicalOrder() != UNORDERED) {
+                    predecessors.add(instance);
+                }
+            }
+        }
+        final ServiceControllerImpl<?> parent = controller.getParentController();
+        if (parent != null && parent.getTopologicalOrder() != UNORDERED) {
+            predecessors.add(parent);
+        }
+    }
+
+    /**
+     * Add the installed services that depend on {@code controller} through any of its names, and its children.
+     */
+    private static void addSuccessors(final ServiceControllerImpl<?> controller, final List<ServiceControllerImpl<?>> successors) {
+        addSuccessors(controller.getPrimaryRegistration().getDependentsSnapshot(), successors);
+        for (ServiceRegistrationImpl alias : controller.getAliasRegistrations()) {
+            addSuccessors(alias.getDependentsSnapshot(), successors);
+        }
+        final ServiceControllerImpl<?>[] children;
+        synchronized (controller) {
+            children = controller.getChildren();
+        }
+        for (ServiceControllerImpl<?> child : children) {
+            if (isInstalled(child)) {
+                successors.add(child);
+            }
+        }
+    }
+
+    private static void addSuccessors(final Dependent[] dependents, final List<ServiceControllerImpl<?>> successors) {
+        for (Dependent dependent : dependents) {
+            final ServiceControllerImpl<?> controller = dependent.getController();
+            if (controller != null && isInstalled(controller)) {
+                successors.add(controller);
+            }
+        }
+    }
+
+    /**
+     * Determine whether a service is still registered, as opposed to rolled back or removed.
+     */
+    private static boolean isInstalled(final ServiceControllerImpl<?> controller) {
+        return controller.getPrimaryRegistration().getInstance() == controller;
+    }
+}
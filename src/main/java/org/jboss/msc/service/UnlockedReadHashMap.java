@@ -29,10 +29,12 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * A hash map that supports non-blocking, lockless read access.
+ * A hash map that supports non-blocking, lockless read access.  Writes are serialized per stripe of rows, so that
+ * writers of keys in different stripes do not wait for each other; a resize takes the locks of all stripes.
  *
  * @param <K> the key type
  * @param <V> the value type
@@ -43,18 +45,28 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
     private static final int DEFAULT_INITIAL_CAPACITY = 128;
     private static final int MAXIMUM_CAPACITY = 1 << 30;
     private static final float DEFAULT_LOAD_FACTOR = 0.60f;
+    /**
+     * The number of write lock stripes.  The table is never smaller, so the stripe of a row is the same at every
+     * table size.
+     */
+    private static final int STRIPES = 16;
 
     // Final fields (thread-safe)
-    private final Object writeLock = new Object();
+    private final Object[] writeLocks = new Object[STRIPES];
     private final Set<Entry<K, V>> entrySet = new EntrySet();
     private final float loadFactor;
+    private final AtomicInteger size = new AtomicInteger();
+    private final Runnable resizeTask = new Runnable() {
+        public void run() {
+            if (size.get() > threshold) {
+                resize();
+            }
+        }
+    };
 
-    // Volatile fields (writes protected by {@link #writeLock})
-    private volatile int size;
+    // Volatile fields (writes protected by all of {@link #writeLocks})
     private volatile AtomicReferenceArray<Item<K,V>[]> table;
-
-    // Raw fields (reads and writes protected by {@link #writeLock}
-    private int threshold;
+    private volatile int threshold;
 
     public UnlockedReadHashMap(int initialCapacity, final float loadFactor) {
         if (initialCapacity < 0) {
@@ -67,17 +79,18 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
             throw new IllegalArgumentException("Load factor must be > 0.0f");
         }
 
-        int capacity = 1;
+        int capacity = STRIPES;
 
         while (capacity < initialCapacity) {
             capacity <<= 1;
         }
 
-        this.loadFactor = loadFactor;
-        synchronized (writeLock) {
-            threshold = (int)(capacity * loadFactor);
-            table = new AtomicReferenceArray<Item<K, V>[]>(capacity);
+        for (int i = 0; i < STRIPES; i ++) {
+            writeLocks[i] = new Object();
         }
+        this.loadFactor = loadFactor;
+        threshold = (int)(capacity * loadFactor);
+        table = new AtomicReferenceArray<Item<K, V>[]>(capacity);
     }
 
     public UnlockedReadHashMap(final float loadFactor) {
@@ -92,12 +105,41 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
         this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
     }
 
+    /**
+     * Get the write lock of the stripe of a key.
+     */
+    private Object getWriteLock(final Object key) {
+        return writeLocks[key.hashCode() & (STRIPES - 1)];
+    }
+
+    /**
+     * Run an action while holding the write locks of all stripes, from the given one on.  The locks are always taken
+     * in the same order, so two such actions cannot deadlock; the caller must not hold any of them.
+     */
+    private void withWriteLocks(final int stripe, final Runnable action) {
+        if (stripe == STRIPES) {
+            action.run();
+        } else synchronized (writeLocks[stripe]) {
+            withWriteLocks(stripe + 1, action);
+        }
+    }
+
+    /**
+     * Grow the table if an added item has taken the size over the threshold.  This must be called without holding
+     * any write lock.
+     */
+    private void itemAdded() {
+        if (size.incrementAndGet() > threshold) {
+            withWriteLocks(0, resizeTask);
+        }
+    }
+
     @SuppressWarnings( { "unchecked" })
     private void resize() {
-        assert Thread.holdsLock(writeLock);
         final AtomicReferenceArray<Item<K, V>[]> oldTable = table;
         final int oldCapacity = oldTable.length();
         if (oldCapacity == MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
             return;
         }
         final int newCapacity = oldCapacity << 1;
@@ -153,33 +195,28 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
         return null;
     }
 
-    private V doPut(AtomicReferenceArray<Item<K, V>[]> table, K key, V value, boolean ifAbsent) {
+    /**
+     * Add a value unless the key is present, holding the write lock of the key's stripe.
+     *
+     * @return the existing item, or {@code null} if a new one was added
+     */
+    private Item<K, V> doPut(AtomicReferenceArray<Item<K, V>[]> table, K key, V value) {
         final int hc = getIndex(table, key);
         final Item<K, V>[] old = doGetRow(table, hc);
         if (old == null) {
             @SuppressWarnings( { "unchecked" })
             final Item<K, V>[] newRow = new Item[] { new Item<K, V>(key, value) };
             table.set(hc, newRow);
-            if (size++ == threshold) {
-                resize();
-            }
             return null;
         } else {
             final Item<K, V> item = doGet(old, key);
             if (item != null) {
-                try {
-                    return item.value;
-                } finally {
-                    if (! ifAbsent) item.value = value;
-                }
+                return item;
             }
             final int oldLen = old.length;
             final Item<K, V>[] newRow = Arrays.copyOf(old, oldLen + 1);
             newRow[oldLen] = new Item<K, V>(key, value);
             table.set(hc, newRow);
-            if (size++ == threshold) {
-                resize();
-            }
             return null;
         }
     }
@@ -206,7 +243,7 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
     }
 
     public int size() {
-        return size;
+        return size.get();
     }
 
     public boolean containsKey(final Object key) {
@@ -229,16 +266,23 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
         if (key == null) {
             throw new IllegalArgumentException("key is null");
         }
-        synchronized (writeLock) {
-            return doPut(table, key, value, false);
+        synchronized (getWriteLock(key)) {
+            final Item<K, V> item = doPut(table, key, value);
+            if (item != null) {
+                final V oldValue = item.value;
+                item.value = value;
+                return oldValue;
+            }
         }
+        itemAdded();
+        return null;
     }
 
     public V remove(final Object key) {
         if (key == null) {
             return null;
         }
-        synchronized (writeLock) {
+        synchronized (getWriteLock(key)) {
             final int hc = getIndex(table, key);
             final Item<K, V>[] row = doGetRow(table, hc);
             if (row == null) {
@@ -249,7 +293,7 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
                 final Item<K, V> item = row[i];
                 if (item.key.equals(key)) {
                     table.set(hc, remove(row, i));
-                    size --;
+                    size.decrementAndGet();
                     return item.value;
                 }
             }
@@ -258,26 +302,33 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
     }
 
     public void clear() {
-        synchronized (writeLock) {
-            table = new AtomicReferenceArray<Item<K, V>[]>(table.length());
-            size = 0;
-        }
+        withWriteLocks(0, new Runnable() {
+            public void run() {
+                table = new AtomicReferenceArray<Item<K, V>[]>(table.length());
+                size.set(0);
+            }
+        });
     }
 
     public V putIfAbsent(final K key, final V value) {
         if (key == null) {
             throw new IllegalArgumentException("key is null");
         }
-        synchronized (writeLock) {
-            return doPut(table, key, value, true);
+        synchronized (getWriteLock(key)) {
+            final Item<K, V> item = doPut(table, key, value);
+            if (item != null) {
+                return item.value;
+            }
         }
+        itemAdded();
+        return null;
     }
 
     public boolean remove(final Object key, final Object value) {
         if (key == null) {
             return false;
         }
-        synchronized (writeLock) {
+        synchronized (getWriteLock(key)) {
             final int hc = getIndex(table, key);
             final Item<K, V>[] row = doGetRow(table, hc);
             if (row == null) {
@@ -288,7 +339,7 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
                 final Item<K, V> item = row[i];
                 if (item.key.equals(key) && (value == null ? item.value == null : value.equals(item.value))) {
                     table.set(hc, remove(row, i));
-                    size --;
+                    size.decrementAndGet();
                     return true;
                 }
             }
@@ -300,7 +351,7 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
         if (key == null) {
             return false;
         }
-        synchronized (writeLock) {
+        synchronized (getWriteLock(key)) {
             final Item<K, V> item = doGet(table, key);
             if (item != null) {
                 if (oldValue == null ? item.value == null : oldValue.equals(item.value)) {
@@ -316,7 +367,7 @@ final class UnlockedReadHashMap<K, V> extends AbstractMap<K, V> implements Concu
         if (key == null) {
             return null;
         }
-        synchronized (writeLock) {
+        synchronized (getWriteLock(key)) {
             final Item<K, V> item = doGet(table, key);
             if (item != null) try {
                 return item.value;
@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service.management;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * A snapshot of the queue metrics of one execution lane of a service container.
+ */
+public class ExecutionLaneStatus implements Serializable {
+
+    private static final long serialVersionUID = -2717946233713437453L;
+
+    private final String laneName;
+    private final int maxConcurrency;
+    private final int activeCount;
+    private final int queueSize;
+    private final int peakQueueSize;
+    private final long submittedCount;
+    private final long completedCount;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param laneName the lane name
+     * @param maxConcurrency the maximum number of tasks the lane runs at a time, or 0 if unlimited
+     * @param activeCount the number of tasks running or scheduled to run
+     * @param queueSize the number of tasks waiting to run
+     * @param peakQueueSize the largest number of tasks ever waiting to run
+     * @param submittedCount the number of tasks submitted to the lane
+     * @param completedCount the number of tasks which have completed
+     */
+    @ConstructorProperties({"laneName", "maxConcurrency", "activeCount", "queueSize", "peakQueueSize", "submittedCount", "completedCount"})
+    public ExecutionLaneStatus(final String laneName, final int maxConcurrency, final int activeCount, final int queueSize, final int peakQueueSize, final long submittedCount, final long completedCount) {
+        if (laneName == null) {
+            throw new IllegalArgumentException("laneName is null");
+        }
+        this.laneName = laneName;
+        this.maxConcurrency = maxConcurrency;
+        this.activeCount = activeCount;
+        this.queueSize = queueSize;
+        this.peakQueueSize = peakQueueSize;
+        this.submittedCount = submittedCount;
+        this.completedCount = completedCount;
+    }
+
+    /**
+     * Get the lane name.
+     *
+     * @return the lane name
+     */
+    public String getLaneName() {
+        return laneName;
+    }
+
+    /**
+     * Get the maximum number of tasks the lane runs at a time, or 0 if unlimited.
+     *
+     * @return the maximum concurrency
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Get the number of tasks which were running or scheduled to run at the time of the query.
+     *
+     * @return the active count
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * Get the number of tasks which were waiting to run at the time of the query.
+     *
+     * @return the queue size
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Get the largest number of tasks which were ever waiting to run at the same time.
+     *
+     * @return the peak queue size
+     */
+    public int getPeakQueueSize() {
+        return peakQueueSize;
+    }
+
+    /**
+     * Get the number of tasks which were submitted to the lane.
+     *
+     * @return the submitted count
+     */
+    public long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    /**
+     * Get the number of tasks which have completed.
+     *
+     * @return the completed count
+     */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Get a string representation of the current status.
+     *
+     * @return a string representation
+     */
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("Lane \"").append(laneName).append("\" ");
+        builder.append("max concurrency ").append(maxConcurrency == 0 ? "unlimited" : Integer.toString(maxConcurrency));
+        builder.append(" active ").append(activeCount);
+        builder.append(" queued ").append(queueSize).append(" (peak ").append(peakQueueSize).append(')');
+        builder.append(" submitted ").append(submittedCount);
+        builder.append(" completed ").append(completedCount);
+        return builder.toString();
+    }
+}
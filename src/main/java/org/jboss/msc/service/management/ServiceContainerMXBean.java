@@ -61,6 +61,36 @@ public interface ServiceContainerMXBean {
      */
     void setServiceMode(String name, String mode);
 
+    /**
+     * Get the queue metrics of the execution lanes configured for this container.  If no lanes were configured,
+     * the list is empty.
+     *
+     * @return the list of lane statuses
+     */
+    List<ExecutionLaneStatus> queryExecutionLaneStatuses();
+
+    /**
+     * Get the number of tasks currently waiting in the queue of the container thread pool.
+     *
+     * @return the queue size, or -1 if the container runs on a user-supplied executor
+     */
+    int getQueueSize();
+
+    /**
+     * Get the largest number of tasks which have been waiting in the queue of the container thread pool at the
+     * same time.
+     *
+     * @return the peak queue size, or -1 if the container runs on a user-supplied executor
+     */
+    int getPeakQueueSize();
+
+    /**
+     * Get the current target size of the adaptive lifecycle thread pool.
+     *
+     * @return the pool size, or -1 if the container has no adaptive lifecycle pool
+     */
+    int getLifecyclePoolSize();
+
     /**
      * Dump the container state to the console.
      */
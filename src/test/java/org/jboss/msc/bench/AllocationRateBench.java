@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceContainer;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.util.LatchedFinishListener;
+
+/**
+ * Measures the number of bytes allocated, by all threads of the JVM, per installed service.  Each service depends on
+ * the previous one, so that every installation notifies a dependent.  Requires a JVM which supports thread
+ * allocation accounting.
+ */
+public class AllocationRateBench {
+
+    public static void main(String[] args) throws Exception {
+        final int totalServiceDefinitions = Integer.parseInt(args[0]);
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        for (int round = 0; round < rounds; round++) {
+            final ServiceContainer container = ServiceContainer.Factory.create();
+            final LatchedFinishListener listener = new LatchedFinishListener();
+            container.addListener(listener);
+
+            final Map<Long, Long> before = getAllocatedBytes(threadMXBean);
+            ServiceName previous = null;
+            for (int i = 0; i < totalServiceDefinitions; i++) {
+                final ServiceName name = ServiceName.of("test" + i);
+                final ServiceBuilder<Void> builder = container.addService(name, Service.NULL);
+                if (previous != null) {
+                    builder.addDependency(previous);
+                }
+                builder.install();
+                previous = name;
+            }
+            listener.await();
+            final Map<Long, Long> after = getAllocatedBytes(threadMXBean);
+
+            long allocated = 0L;
+            for (Map.Entry<Long, Long> entry : after.entrySet()) {
+                final Long start = before.get(entry.getKey());
+                allocated += entry.getValue().longValue() - (start == null ? 0L : start.longValue());
+            }
+            System.out.println(totalServiceDefinitions + " : " + listener.getElapsedTime() / 1000.0 + " : " + allocated / totalServiceDefinitions + " bytes/service");
+            container.shutdown();
+            container.awaitTermination();
+        }
+    }
+
+    private static Map<Long, Long> getAllocatedBytes(final com.sun.management.ThreadMXBean threadMXBean) {
+        final long[] ids = threadMXBean.getAllThreadIds();
+        final long[] bytes = threadMXBean.getThreadAllocatedBytes(ids);
+        final Map<Long, Long> map = new HashMap<Long, Long>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0L) {
+                map.put(Long.valueOf(ids[i]), Long.valueOf(bytes[i]));
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceContainer;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.util.LatchedFinishListener;
+
+/**
+ * Reports the heap retained per installed service, measured as the difference in used heap after a full garbage
+ * collection before and after installing the services.  The service names are created up front so that they are not
+ * counted.
+ */
+public class ControllerFootprintBench {
+
+    public static void main(String[] args) throws Exception {
+        final int totalServiceDefinitions = Integer.parseInt(args[0]);
+
+        final ServiceName[] names = new ServiceName[totalServiceDefinitions];
+        for (int i = 0; i < totalServiceDefinitions; i++) {
+            names[i] = ServiceName.of("test" + i);
+        }
+
+        final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        final ServiceContainer container = ServiceContainer.Factory.create();
+        final LatchedFinishListener listener = new LatchedFinishListener();
+        container.addListener(listener);
+        final long before = usedHeap(memoryMXBean);
+
+        for (int i = 0; i < totalServiceDefinitions; i++) {
+            container.addService(names[i], Service.NULL).install();
+        }
+        listener.await();
+
+        final long after = usedHeap(memoryMXBean);
+        System.out.println(totalServiceDefinitions + " : " + (after - before) / totalServiceDefinitions + " bytes/service");
+        container.shutdown();
+    }
+
+    private static long usedHeap(final MemoryMXBean memoryMXBean) throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            memoryMXBean.gc();
+            Thread.sleep(100L);
+            used = Math.min(used, memoryMXBean.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.bench;
+
+import org.jboss.msc.service.Location;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceContainer;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.util.LatchedFinishListener;
+
+/**
+ * Compares the time taken to install independent services, and the heap they retain once installed, without a
+ * location, with a location built by the caller from a full stack trace, and with {@link ServiceBuilder#setLocation()}.
+ * The cost of capturing a location depends on the depth of the stack, so the services are installed from a given
+ * number of frames down, as they would be by a deployer.
+ */
+public class LocationCaptureBench {
+
+    private static final int NONE = 0;
+    private static final int EAGER = 1;
+    private static final int CAPTURED = 2;
+    private static final String[] MODES = { "none", "eager", "setLocation()" };
+
+    public static void main(String[] args) throws Exception {
+        final int totalServiceDefinitions = Integer.parseInt(args[0]);
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final int stackDepth = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        for (int round = 0; round < rounds; round++) {
+            for (int mode = NONE; mode <= CAPTURED; mode++) {
+                final long[] result = run(totalServiceDefinitions, mode, stackDepth);
+                // whatever the container still held is released once it is shut down and unreachable
+                final long retained = result[1] - usedHeap();
+                System.out.println(MODES[mode] + ": " + totalServiceDefinitions + " services installed in " + result[0] / 1000000L + " ms, " + result[0] / totalServiceDefinitions + " ns/service, " + retained / totalServiceDefinitions + " bytes/service retained");
+            }
+        }
+    }
+
+    /**
+     * Install the services, and return the time taken and the heap in use while they are installed.
+     */
+    private static long[] run(final int totalServiceDefinitions, final int mode, final int stackDepth) throws Exception {
+        final ServiceContainer container = ServiceContainer.Factory.create();
+        final LatchedFinishListener listener = new LatchedFinishListener();
+        container.addListener(listener);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < totalServiceDefinitions; i++) {
+            install(container, ServiceName.of("test" + i), mode, stackDepth);
+        }
+        final long installed = System.nanoTime() - start;
+
+        listener.await();
+        final long used = usedHeap();
+        container.shutdown();
+        container.awaitTermination();
+        return new long[] { installed, used };
+    }
+
+    private static void install(final ServiceContainer container, final ServiceName name, final int mode, final int stackDepth) {
+        if (stackDepth > 0) {
+            install(container, name, mode, stackDepth - 1);
+            return;
+        }
+        final ServiceBuilder<Void> builder = container.addService(name, Service.NULL);
+        if (mode == EAGER) {
+            final StackTraceElement element = new Throwable().getStackTrace()[0];
+            builder.setLocation(new Location(element.getFileName(), element.getLineNumber(), -1, null));
+        } else if (mode == CAPTURED) {
+            builder.setLocation();
+        }
+        builder.install();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100L);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -38,7 +38,7 @@ public class NoDepsSleepyStartBench {
 
         for (int i = 0; i < totalServiceDefinitions; i++) {
             final SleepService service = new SleepService();
-            container.addService(ServiceName.of(("test" + i).intern()), service);
+            container.addService(ServiceName.of(("test" + i).intern()), service).install();
         }
 
         listener.await();
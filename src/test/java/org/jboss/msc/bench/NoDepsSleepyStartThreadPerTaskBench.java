@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.bench;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.jboss.msc.service.ServiceContainer;
+import org.jboss.msc.service.ServiceContainerConfiguration;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.util.LatchedFinishListener;
+
+/**
+ * Like {@link NoDepsSleepyStartBench}, but runs the start methods on a thread of their own while the container pool
+ * is kept small.  Virtual threads are used if the runtime provides them, platform threads otherwise.
+ */
+public class NoDepsSleepyStartThreadPerTaskBench {
+
+    public static void main(String[] args) throws Exception {
+        final int totalServiceDefinitions = Integer.parseInt(args[0]);
+
+        final ServiceContainer container = ServiceContainer.Factory.create(new ServiceContainerConfiguration()
+                .setCoreSize(2).setLifecycleThreadFactory(getLifecycleThreadFactory()));
+
+        final LatchedFinishListener listener = new LatchedFinishListener();
+        container.addListener(listener);
+
+        for (int i = 0; i < totalServiceDefinitions; i++) {
+            final SleepService service = new SleepService();
+            container.addService(ServiceName.of(("test" + i).intern()), service).install();
+        }
+
+        listener.await();
+        System.out.println(totalServiceDefinitions + " : " + listener.getElapsedTime() / 1000.0);
+        container.shutdown();
+    }
+
+    private static ThreadFactory getLifecycleThreadFactory() {
+        try {
+            final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            final Object builder = ofVirtual.invoke(null);
+            final Method factory = ofVirtual.getReturnType().getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception e) {
+            System.out.println("Virtual threads are not available, using platform threads");
+            return new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        }
+    }
+}
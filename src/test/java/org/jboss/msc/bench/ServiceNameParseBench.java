@@ -0,0 +1,58 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.bench;
+
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * Measures the throughput of {@link ServiceName#parse(String)} for names typical of a deployment, as sent by
+ * management requests.  Run with {@code -Djboss.msc.service.name.parse-cache-size=N} to measure the parse cache.
+ */
+public class ServiceNameParseBench {
+
+    private static final String[] NAMES = {
+        "jboss.deployment.unit.\"app.war\".component.OrderBean.START",
+        "jboss.deployment.unit.\"app.war\".INSTALL",
+        "jboss.naming.context.java.module.app.web.env",
+        "jboss.naming.context.java.comp.app.web.OrderBean",
+        "jboss.web.deployment.default-host./app",
+        "jboss.ejb.default-resource-adapter-name-service",
+        "jboss.data-source.java:jboss/datasources/ExampleDS",
+        "jboss.txn.TransactionManager",
+    };
+
+    public static void main(String[] args) throws Exception {
+        final int iterations = Integer.parseInt(args[0]);
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final String[] names = NAMES;
+        for (int round = 0; round < rounds; round++) {
+            int hash = 0;
+            final long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                hash += ServiceName.parse(names[i % names.length]).hashCode();
+            }
+            final long elapsed = System.nanoTime() - start;
+            System.out.println(iterations + " : " + elapsed / iterations + " ns/parse : " + (long) iterations * 1000000L / elapsed + " parses/ms (" + hash + ")");
+        }
+    }
+}
@@ -52,6 +52,7 @@ public class TenForwardBench {
             for (ServiceName dep : deps) {
                 builder.addDependency(dep);
             }
+            builder.install();
         }
 
         listener.await();
@@ -188,6 +188,16 @@ public abstract class AbstractServiceBuilderTest extends AbstractServiceTest {
     }
 
     @SuppressWarnings("unchecked")
+    @Test
+    public void setLocationOfCaller() throws Exception {
+        final ServiceBuilder<Void> serviceBuilder = getServiceBuilder(serviceContainer.addService(serviceName, Service.NULL));
+        final int lineNumber = new Throwable().getStackTrace()[0].getLineNumber() + 1;
+        serviceBuilder.setLocation();
+        final Location location = serviceBuilder.install().getLocation();
+        assertEquals("AbstractServiceBuilderTest.java", location.getFileName());
+        assertEquals(lineNumber, location.getLineNumber());
+    }
+
     @Test
     public void addServiceWithDefaultLocationAndInjection() throws Exception {
         Future<ServiceController<?>> anotherServiceStart = testListener.expectServiceStart(anotherServiceName);
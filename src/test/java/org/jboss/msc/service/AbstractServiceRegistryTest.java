@@ -141,6 +141,38 @@ public abstract class AbstractServiceRegistryTest extends AbstractServiceTest {
         assertTrue(serviceNames.contains(oneTwoFive));
     }
 
+    @Test
+    public void getServicesUnderName() throws Exception {
+        final ServiceName oneTwo = ServiceName.of("one", "two");
+        final ServiceName oneSix = ServiceName.of("one", "six");
+        // aliased under one.two, and depending on a name under it which is never installed
+        serviceContainer.addService(oneSix, Service.NULL).addAliases(oneTwo.append("six")).addDependency(oneTwo.append("seven")).install();
+
+        List<ServiceController<?>> services = registry.getServices(oneTwo);
+        assertEquals(3, services.size());
+        assertTrue(services.contains(registry.getService(oneTwoThree)));
+        assertTrue(services.contains(registry.getService(oneTwoFive)));
+        assertTrue(services.contains(registry.getService(oneSix)));
+        services = registry.getServices(ServiceName.of("one"));
+        assertEquals(3, services.size());
+        services = registry.getServices(oneTwoThree);
+        assertEquals(1, services.size());
+        assertSame(registry.getService(oneTwoThree), services.get(0));
+        assertTrue(registry.getServices(ServiceName.of("two")).isEmpty());
+        assertTrue(registry.getServices(oneTwo.append("seven")).isEmpty());
+
+        removeService(oneTwoFive);
+        services = registry.getServices(oneTwo);
+        assertEquals(2, services.size());
+        assertTrue(services.contains(registry.getService(oneTwoThree)));
+        assertTrue(services.contains(registry.getService(oneSix)));
+
+        try {
+            registry.getServices(null);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {}
+    }
+
     /**
      * Remove {@code serviceName} from {@code serviceContainer}.
      */
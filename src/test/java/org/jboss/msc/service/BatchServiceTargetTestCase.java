@@ -22,6 +22,18 @@
 
 package org.jboss.msc.service;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
 /**
  * Test for {@link BatchServiceTarget} implementation.
  * 
@@ -34,4 +46,83 @@ public class BatchServiceTargetTestCase extends AbstractServiceTargetTest {
         return serviceTarget.batchTarget();
     }
 
+    @Test
+    public void installAllTogether() throws Exception {
+        final BatchServiceTarget batchTarget = serviceContainer.batchTarget();
+        batchTarget.addListener(testListener);
+        final Future<ServiceController<?>> serviceStart = testListener.expectServiceStart(serviceName);
+        final Future<ServiceController<?>> anotherServiceStart = testListener.expectServiceStart(anotherServiceName);
+        final List<ServiceBuilder<?>> builders = new ArrayList<ServiceBuilder<?>>();
+        // dependents before their dependencies
+        builders.add(batchTarget.addService(serviceName, Service.NULL).addDependency(anotherServiceName));
+        builders.add(batchTarget.addService(anotherServiceName, Service.NULL).addAliases(oneMoreServiceName));
+        final List<ServiceController<?>> controllers = batchTarget.install(builders);
+        assertEquals(2, controllers.size());
+        assertController(serviceName, controllers.get(0));
+        assertController(anotherServiceName, controllers.get(1));
+        assertController(controllers.get(0), serviceStart);
+        assertController(controllers.get(1), anotherServiceStart);
+
+        // the batch target removes services installed together as well
+        final Future<ServiceController<?>> serviceRemoval = testListener.expectServiceRemoval(serviceName);
+        final Future<ServiceController<?>> anotherServiceRemoval = testListener.expectServiceRemoval(anotherServiceName);
+        batchTarget.removeServices();
+        assertController(controllers.get(0), serviceRemoval);
+        assertController(controllers.get(1), anotherServiceRemoval);
+    }
+
+    @Test
+    public void installAllWithCycle() throws Exception {
+        final BatchServiceTarget batchTarget = serviceContainer.batchTarget();
+        final List<ServiceBuilder<?>> builders = new ArrayList<ServiceBuilder<?>>();
+        // depends on the cycle without being on it
+        builders.add(batchTarget.addService(extraServiceName, Service.NULL).addDependency(serviceName));
+        builders.add(batchTarget.addService(serviceName, Service.NULL).addDependency(anotherServiceName));
+        builders.add(batchTarget.addService(anotherServiceName, Service.NULL).addDependency(oneMoreServiceName));
+        builders.add(batchTarget.addService(oneMoreServiceName, Service.NULL).addDependency(serviceName));
+        try {
+            batchTarget.install(builders);
+            fail("CircularDependencyException expected");
+        } catch (CircularDependencyException e) {
+            final String message = e.getMessage();
+            assertTrue(message, message.equals("Service " + serviceName + " has a circular dependency")
+                    || message.equals("Service " + anotherServiceName + " has a circular dependency")
+                    || message.equals("Service " + oneMoreServiceName + " has a circular dependency"));
+        }
+        assertNull(serviceContainer.getService(extraServiceName));
+        assertNull(serviceContainer.getService(serviceName));
+        assertNull(serviceContainer.getService(anotherServiceName));
+        assertNull(serviceContainer.getService(oneMoreServiceName));
+
+        // none of them is left behind, so they can be installed again without the cycle
+        final ServiceController<?> serviceController = batchTarget.addService(serviceName, Service.NULL).addDependency(anotherServiceName).install();
+        assertSame(serviceController, serviceContainer.getService(serviceName));
+    }
+
+    @Test
+    public void installAllWithDuplicate() throws Exception {
+        final ServiceController<?> existing = serviceContainer.addService(extraServiceName, Service.NULL).install();
+        final BatchServiceTarget batchTarget = serviceContainer.batchTarget();
+        final List<ServiceBuilder<?>> builders = new ArrayList<ServiceBuilder<?>>();
+        builders.add(batchTarget.addService(serviceName, Service.NULL));
+        builders.add(batchTarget.addService(anotherServiceName, Service.NULL).addAliases(extraServiceName));
+        try {
+            batchTarget.install(builders);
+            fail("DuplicateServiceException expected");
+        } catch (DuplicateServiceException e) {}
+        assertNull(serviceContainer.getService(serviceName));
+        assertNull(serviceContainer.getService(anotherServiceName));
+        assertSame(existing, serviceContainer.getService(extraServiceName));
+    }
+
+    @Test
+    public void installAllForeignBuilder() throws Exception {
+        final BatchServiceTarget batchTarget = serviceContainer.batchTarget();
+        final List<ServiceBuilder<?>> builders = new ArrayList<ServiceBuilder<?>>();
+        builders.add(serviceContainer.addService(serviceName, Service.NULL));
+        try {
+            batchTarget.install(builders);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {}
+    }
 }
@@ -28,6 +28,8 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Future;
 
 import org.jboss.msc.service.ServiceController.Mode;
@@ -952,4 +954,100 @@ public class ChangeModeTestCase extends AbstractServiceTest {
             fail ("IllegalArgument expected");
         } catch (IllegalArgumentException e) {}
     }
-}
\ No newline at end of file
+
+    @Test
+    public void changeModeOfManyServices() throws Exception {
+        Future<ServiceController<?>> firstServiceStart = testListener.expectServiceStart(firstServiceName);
+        serviceContainer.addService(firstServiceName, Service.NULL).addListener(testListener).setInitialMode(Mode.ON_DEMAND).install();
+        final List<ServiceController<?>> controllers = new ArrayList<ServiceController<?>>();
+        for (int i = 0; i < 50; i++) {
+            controllers.add(serviceContainer.addService(secondServiceName.append(Integer.toString(i)), Service.NULL).addDependency(firstServiceName).install());
+        }
+        final ServiceController<?> firstController = assertController(firstServiceName, firstServiceStart);
+
+        // all dependents are stopped, the on demand service loses its demand
+        Future<ServiceController<?>> firstServiceStop = testListener.expectServiceStop(firstServiceName);
+        serviceContainer.setMode(controllers, Mode.NEVER);
+        assertController(firstController, firstServiceStop);
+        for (ServiceController<?> controller : controllers) {
+            assertSame(Mode.NEVER, controller.getMode());
+            assertSame(State.DOWN, controller.getState());
+        }
+
+        firstServiceStart = testListener.expectServiceStart(firstServiceName);
+        serviceContainer.setMode(controllers, Mode.ACTIVE);
+        assertController(firstController, firstServiceStart);
+
+        firstServiceStop = testListener.expectServiceStop(firstServiceName);
+        serviceContainer.setMode(controllers, Mode.REMOVE);
+        assertController(firstController, firstServiceStop);
+        for (ServiceController<?> controller : controllers) {
+            assertSame(Mode.REMOVE, controller.getMode());
+        }
+
+        shutdownContainer();
+        try {
+            serviceContainer.setMode(controllers, Mode.ACTIVE);
+            fail ("IllegalArgument expected");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void changeModeOfManyServicesThroughDelegate() throws Exception {
+        final ServiceContainer delegate = new DelegatingServiceContainer(serviceContainer, serviceContainer);
+        final List<ServiceController<?>> controllers = new ArrayList<ServiceController<?>>();
+        for (int i = 0; i < 10; i++) {
+            controllers.add(serviceContainer.addService(secondServiceName.append(Integer.toString(i)), Service.NULL).install());
+        }
+        delegate.setMode(controllers, Mode.NEVER);
+        for (ServiceController<?> controller : controllers) {
+            assertSame(Mode.NEVER, controller.getMode());
+        }
+
+        // a controller of another container is rejected before any mode is changed
+        final ServiceContainer otherContainer = ServiceContainer.Factory.create();
+        try {
+            final List<ServiceController<?>> mixed = new ArrayList<ServiceController<?>>(controllers);
+            mixed.add(otherContainer.addService(firstServiceName, Service.NULL).install());
+            try {
+                delegate.setMode(mixed, Mode.ACTIVE);
+                fail ("IllegalArgument expected");
+            } catch (IllegalArgumentException e) {}
+            for (ServiceController<?> controller : controllers) {
+                assertSame(Mode.NEVER, controller.getMode());
+            }
+        } finally {
+            otherContainer.shutdown();
+        }
+
+        shutdownContainer();
+        try {
+            delegate.setMode(controllers, Mode.ACTIVE);
+            fail ("IllegalArgument expected");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void changeModeOfServicesUnderName() throws Exception {
+        final List<ServiceController<?>> controllers = new ArrayList<ServiceController<?>>();
+        for (int i = 0; i < 20; i++) {
+            controllers.add(serviceContainer.addService(secondServiceName.append(Integer.toString(i)), Service.NULL).install());
+        }
+        final ServiceController<?> firstController = serviceContainer.addService(firstServiceName, Service.NULL).install();
+
+        serviceContainer.setMode(secondServiceName, Mode.NEVER);
+        for (ServiceController<?> controller : controllers) {
+            assertSame(Mode.NEVER, controller.getMode());
+        }
+        assertSame(Mode.ACTIVE, firstController.getMode());
+
+        serviceContainer.setMode(secondServiceName.append("3"), Mode.ON_DEMAND);
+        assertSame(Mode.ON_DEMAND, controllers.get(3).getMode());
+        assertSame(Mode.NEVER, controllers.get(2).getMode());
+
+        try {
+            serviceContainer.setMode((ServiceName) null, Mode.ACTIVE);
+            fail ("IllegalArgument expected");
+        } catch (IllegalArgumentException e) {}
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.jboss.msc.service.ServiceContainer.TerminateListener;
+import org.jboss.msc.service.ServiceController.State;
+import org.jboss.msc.service.management.ExecutionLaneStatus;
+import org.jboss.msc.util.TestServiceListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies that a container created with a user-supplied executor runs its tasks on that executor, and still
+ * honors the {@link TerminateListener} and {@link ServiceContainer#awaitTermination() awaitTermination} semantics.
+ */
+public class ContainerExecutorTestCase {
+
+    private ExecutorService executorService;
+    private AtomicInteger submittedTasks;
+    private ServiceContainer serviceContainer;
+
+    @Before
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(3);
+        submittedTasks = new AtomicInteger();
+        serviceContainer = ServiceContainer.Factory.create("user-executor", new Executor() {
+            public void execute(final Runnable command) {
+                submittedTasks.incrementAndGet();
+                executorService.execute(command);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serviceContainer.shutdown();
+        serviceContainer.awaitTermination();
+        executorService.shutdown();
+    }
+
+    @Test
+    public void tasksRunOnUserExecutor() throws Exception {
+        final TestServiceListener listener = new TestServiceListener();
+        final ServiceName serviceName = ServiceName.of("service", "one");
+        final Future<ServiceController<?>> serviceStart = listener.expectServiceStart(serviceName);
+        serviceContainer.addService(serviceName, Service.NULL).addListener(listener).install();
+        final ServiceController<?> controller = serviceStart.get();
+        assertNotNull(controller);
+        assertEquals(State.UP, controller.getState());
+        assertTrue(submittedTasks.get() > 0);
+    }
+
+    @Test
+    public void terminationDoesNotShutDownUserExecutor() throws Exception {
+        final CountDownLatch terminated = new CountDownLatch(1);
+        serviceContainer.addTerminateListener(new TerminateListener() {
+            public void handleTermination(final Info info) {
+                terminated.countDown();
+            }
+        });
+        final TestServiceListener listener = new TestServiceListener();
+        final ServiceName serviceName = ServiceName.of("service", "two");
+        final Future<ServiceController<?>> serviceStart = listener.expectServiceStart(serviceName);
+        final ServiceController<?> controller = serviceContainer.addService(serviceName, Service.NULL).addListener(listener).install();
+        serviceStart.get();
+        serviceContainer.shutdown();
+        assertTrue(terminated.await(10L, TimeUnit.SECONDS));
+        assertTrue(serviceContainer.isShutdownComplete());
+        assertEquals(State.REMOVED, controller.getState());
+        assertFalse(executorService.isShutdown());
+    }
+
+    @Test
+    public void terminationOfEmptyContainer() throws Exception {
+        serviceContainer.shutdown();
+        serviceContainer.awaitTermination(10L, TimeUnit.SECONDS);
+        assertTrue(serviceContainer.isShutdownComplete());
+        assertFalse(executorService.isShutdown());
+    }
+
+    @Test
+    public void inlineInternalTasks() throws Exception {
+        final int submittedWithoutInlining = installChain(false);
+        final int submittedWithInlining = installChain(true);
+        // the internal tasks which were run inline never reached the executor
+        assertTrue(submittedWithInlining < submittedWithoutInlining);
+    }
+
+    /**
+     * Install a chain of dependent services in a new container, wait until the last of them is up and the container
+     * is shut down, and return the number of tasks the container submitted to its executor.
+     */
+    private int installChain(final boolean inlineInternalTasks) throws Exception {
+        final AtomicInteger submitted = new AtomicInteger();
+        final ServiceContainer chainContainer = ServiceContainer.Factory.create(new ServiceContainerConfiguration()
+                .setName("inline-internal-tasks").setInlineInternalTasks(inlineInternalTasks).setExecutor(new Executor() {
+                    public void execute(final Runnable command) {
+                        submitted.incrementAndGet();
+                        executorService.execute(command);
+                    }
+                }));
+        try {
+            final TestServiceListener listener = new TestServiceListener();
+            final ServiceName first = ServiceName.of("chain", "0");
+            final Future<ServiceController<?>> firstStart = listener.expectServiceStart(first);
+            final int length = 50;
+            for (int i = 0; i < length; i ++) {
+                final ServiceBuilder<Void> builder = chainContainer.addService(ServiceName.of("chain", Integer.toString(i)), Service.NULL);
+                if (i < length - 1) {
+                    builder.addDependency(ServiceName.of("chain", Integer.toString(i + 1)));
+                }
+                builder.addListener(listener).install();
+            }
+            final ServiceController<?> controller = firstStart.get();
+            assertNotNull(controller);
+            assertEquals(State.UP, controller.getState());
+        } finally {
+            chainContainer.shutdown();
+            chainContainer.awaitTermination(10L, TimeUnit.SECONDS);
+        }
+        assertTrue(chainContainer.isShutdownComplete());
+        return submitted.get();
+    }
+
+    @Test
+    public void criticalPathStartsFirst() throws Exception {
+        final ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
+        final ServiceContainer priorityContainer = ServiceContainer.Factory.create(new ServiceContainerConfiguration()
+                .setName("critical-path").setExecutor(singleThreadExecutor)
+                .setStartTaskScheduling(ServiceContainerConfiguration.StartTaskScheduling.CRITICAL_PATH));
+        try {
+            final CountDownLatch blocked = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            priorityContainer.addService(ServiceName.of("blocker"), new AbstractService<Void>() {
+                public void start(final StartContext context) throws StartException {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new StartException(e);
+                    }
+                }
+            }).install();
+            assertTrue(blocked.await(10L, TimeUnit.SECONDS));
+            // all further tasks queue up behind the blocked start
+            final List<ServiceName> startOrder = Collections.synchronizedList(new ArrayList<ServiceName>());
+            final CountDownLatch started = new CountDownLatch(11);
+            for (int i = 0; i < 5; i ++) {
+                priorityContainer.addService(ServiceName.of("leaf", Integer.toString(i)), new RecordingService(startOrder, started)).install();
+            }
+            final ServiceName hub = ServiceName.of("hub");
+            priorityContainer.addService(hub, new RecordingService(startOrder, started)).install();
+            for (int i = 0; i < 5; i ++) {
+                priorityContainer.addService(ServiceName.of("hub", "dependent", Integer.toString(i)), new RecordingService(startOrder, started)).addDependency(hub).install();
+            }
+            release.countDown();
+            assertTrue(started.await(10L, TimeUnit.SECONDS));
+            assertEquals(hub, startOrder.get(0));
+        } finally {
+            priorityContainer.shutdown();
+            priorityContainer.awaitTermination(10L, TimeUnit.SECONDS);
+            singleThreadExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void startTimeWeightingSurvivesReinstall() throws Exception {
+        final ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
+        final ServiceContainer priorityContainer = ServiceContainer.Factory.create(new ServiceContainerConfiguration()
+                .setName("weighted-critical-path").setExecutor(singleThreadExecutor)
+                .setStartTaskScheduling(ServiceContainerConfiguration.StartTaskScheduling.WEIGHTED_CRITICAL_PATH));
+        try {
+            final ServiceName fast = ServiceName.of("fast");
+            final ServiceName slow = ServiceName.of("slow");
+            // start both once, so that their start times are known, then remove them along with their registrations
+            final List<ServiceName> firstOrder = Collections.synchronizedList(new ArrayList<ServiceName>());
+            final CountDownLatch firstStarted = new CountDownLatch(2);
+            final CountDownLatch removed = new CountDownLatch(2);
+            final AbstractServiceListener<Object> removalListener = new AbstractServiceListener<Object>() {
+                public void serviceRemoved(final ServiceController<?> controller) {
+                    removed.countDown();
+                }
+            };
+            final ServiceController<?> fastController = priorityContainer.addService(fast, new RecordingService(firstOrder, firstStarted)).addListener(removalListener).install();
+            final ServiceController<?> slowController = priorityContainer.addService(slow, new SlowService(firstOrder, firstStarted)).addListener(removalListener).install();
+            assertTrue(firstStarted.await(10L, TimeUnit.SECONDS));
+            fastController.setMode(ServiceController.Mode.REMOVE);
+            slowController.setMode(ServiceController.Mode.REMOVE);
+            assertTrue(removed.await(10L, TimeUnit.SECONDS));
+            assertNull(priorityContainer.getService(fast));
+            assertNull(priorityContainer.getService(slow));
+
+            final CountDownLatch blocked = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            priorityContainer.addService(ServiceName.of("blocker"), new AbstractService<Void>() {
+                public void start(final StartContext context) throws StartException {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new StartException(e);
+                    }
+                }
+            }).install();
+            assertTrue(blocked.await(10L, TimeUnit.SECONDS));
+            // both queue up behind the blocked start without dependents, so only their weights tell them apart
+            final List<ServiceName> startOrder = Collections.synchronizedList(new ArrayList<ServiceName>());
+            final CountDownLatch started = new CountDownLatch(2);
+            priorityContainer.addService(fast, new RecordingService(startOrder, started)).install();
+            priorityContainer.addService(slow, new RecordingService(startOrder, started)).install();
+            release.countDown();
+            assertTrue(started.await(10L, TimeUnit.SECONDS));
+            assertEquals(slow, startOrder.get(0));
+        } finally {
+            priorityContainer.shutdown();
+            priorityContainer.awaitTermination(10L, TimeUnit.SECONDS);
+            singleThreadExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void listenerLaneDrainsOnShutdown() throws Exception {
+        final ServiceContainer laneContainer = ServiceContainer.Factory.create(new ServiceContainerConfiguration()
+                .setName("listener-lane-shutdown").setListenerConcurrency(1));
+        final int serviceCount = 20;
+        final int listenerCount = 8;
+        final AtomicInteger removed = new AtomicInteger();
+        final List<AbstractServiceListener<Object>> listeners = new ArrayList<AbstractServiceListener<Object>>();
+        for (int i = 0; i < listenerCount; i ++) {
+            listeners.add(new AbstractServiceListener<Object>() {
+                public void serviceRemoved(final ServiceController<?> controller) {
+                    removed.incrementAndGet();
+                }
+            });
+        }
+        final CountDownLatch started = new CountDownLatch(serviceCount);
+        for (int i = 0; i < serviceCount; i ++) {
+            laneContainer.addService(ServiceName.of("listened", Integer.toString(i)), new RecordingService(Collections.synchronizedList(new ArrayList<ServiceName>()), started))
+                    .addListener(listeners).install();
+        }
+        assertTrue(started.await(10L, TimeUnit.SECONDS));
+        final AtomicInteger removedAtTermination = new AtomicInteger(-1);
+        laneContainer.addTerminateListener(new TerminateListener() {
+            public void handleTermination(final Info info) {
+                removedAtTermination.set(removed.get());
+            }
+        });
+        // with this many listeners, the one that completes the shutdown may be notified before the others, which are
+        // still queued in the lane when the container winds its thread pool down
+        laneContainer.shutdown();
+        laneContainer.awaitTermination(10L, TimeUnit.SECONDS);
+        assertTrue(laneContainer.isShutdownComplete());
+        assertEquals(serviceCount * listenerCount, removedAtTermination.get());
+        final ExecutionLaneStatus listenerLane = ((ServiceContainerImpl) laneContainer).getExecutionLaneStatuses()[0];
+        assertEquals("listener", listenerLane.getLaneName());
+        assertEquals(0, listenerLane.getActiveCount());
+        assertEquals(0, listenerLane.getQueueSize());
+    }
+
+    @Test
+    public void laneRunsRejectedTasksInline() throws Exception {
+        final ExecutionLane lane = new ExecutionLane((ServiceContainerImpl) serviceContainer, "rejecting", new Executor() {
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }, 1);
+        final int taskCount = 100000;
+        final AtomicInteger ran = new AtomicInteger();
+        final Runnable task = new Runnable() {
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+        // tasks queued while the lane's only slot runs inline must run on that same pass, not by recursing into it
+        lane.execute(new Runnable() {
+            public void run() {
+                for (int i = 0; i < taskCount; i ++) {
+                    lane.execute(task);
+                }
+            }
+        });
+        assertEquals(taskCount, ran.get());
+        final ExecutionLaneStatus status = lane.getStatus();
+        assertEquals(0, status.getActiveCount());
+        assertEquals(0, status.getQueueSize());
+        assertEquals(taskCount + 1, status.getCompletedCount());
+    }
+
+    @Test
+    public void lifecycleLaneConcurrency() throws Exception {
+        final ServiceContainer laneContainer = ServiceContainer.Factory.create(new ServiceContainerConfiguration()
+                .setName("lifecycle-lane").setExecutor(executorService).setLifecycleConcurrency(1));
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            laneContainer.addService(ServiceName.of("blocker"), new AbstractService<Void>() {
+                public void start(final StartContext context) throws StartException {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new StartException(e);
+                    }
+                }
+            }).install();
+            assertTrue(blocked.await(10L, TimeUnit.SECONDS));
+            final TestServiceListener listener = new TestServiceListener();
+            final ServiceName serviceName = ServiceName.of("service", "waiting");
+            final Future<ServiceController<?>> serviceStart = listener.expectServiceStart(serviceName);
+            laneContainer.addService(serviceName, Service.NULL).addListener(listener).install();
+            // the only lifecycle slot is taken, so the second start has to wait in the lane queue
+            ExecutionLaneStatus lifecycleLane = null;
+            for (int i = 0; i < 100 && (lifecycleLane == null || lifecycleLane.getQueueSize() == 0); i ++) {
+                Thread.sleep(10L);
+                lifecycleLane = ((ServiceContainerImpl) laneContainer).getExecutionLaneStatuses()[0];
+            }
+            assertNotNull(lifecycleLane);
+            assertEquals("lifecycle", lifecycleLane.getLaneName());
+            assertEquals(1, lifecycleLane.getMaxConcurrency());
+            assertEquals(1, lifecycleLane.getActiveCount());
+            assertEquals(1, lifecycleLane.getQueueSize());
+            release.countDown();
+            assertNotNull(serviceStart.get());
+            lifecycleLane = ((ServiceContainerImpl) laneContainer).getExecutionLaneStatuses()[0];
+            // a lane task only counts as completed once it returns, which can be after its service is reported up
+            for (int i = 0; i < 100 && lifecycleLane.getCompletedCount() < 2; i ++) {
+                Thread.sleep(10L);
+                lifecycleLane = ((ServiceContainerImpl) laneContainer).getExecutionLaneStatuses()[0];
+            }
+            assertTrue(lifecycleLane.getPeakQueueSize() >= 1);
+            assertTrue(lifecycleLane.getCompletedCount() >= 2);
+        } finally {
+            release.countDown();
+            laneContainer.shutdown();
+            laneContainer.awaitTermination(10L, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void lifecycleThreadFactory() throws Exception {
+        final AtomicInteger lifecycleThreads = new AtomicInteger();
+        final ServiceContainer threadContainer = ServiceContainer.Factory.create(new ServiceContainerConfiguration()
+                .setName("lifecycle-threads").setExecutor(executorService).setLifecycleThreadFactory(new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        lifecycleThreads.incrementAndGet();
+                        return new Thread(r);
+                    }
+                }));
+        // many more blocking starts than there are threads in the container executor
+        final int serviceCount = 20;
+        final CountDownLatch started = new CountDownLatch(serviceCount);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < serviceCount; i ++) {
+                threadContainer.addService(ServiceName.of("blocking", Integer.toString(i)), new AbstractService<Void>() {
+                    public void start(final StartContext context) throws StartException {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new StartException(e);
+                        }
+                    }
+                }).install();
+            }
+            assertTrue(started.await(10L, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            threadContainer.shutdown();
+            threadContainer.awaitTermination(10L, TimeUnit.SECONDS);
+        }
+        assertTrue(threadContainer.isShutdownComplete());
+        assertTrue(lifecycleThreads.get() >= serviceCount);
+    }
+
+    @Test
+    public void boundedQueue() throws Exception {
+        final ServiceContainer boundedContainer = ServiceContainer.Factory.create(new ServiceContainerConfiguration()
+                .setName("bounded-queue").setCoreSize(1).setQueueCapacity(4));
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // occupy the only pool thread so that nothing is drained from the queue
+            boundedContainer.addService(ServiceName.of("blocker"), new AbstractService<Void>() {
+                public void start(final StartContext context) throws StartException {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new StartException(e);
+                    }
+                }
+            }).install();
+            assertTrue(blocked.await(10L, TimeUnit.SECONDS));
+            final int serviceCount = 100;
+            final CountDownLatch started = new CountDownLatch(serviceCount);
+            final Thread installer = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < serviceCount; i ++) {
+                        boundedContainer.addService(ServiceName.of("bounded", Integer.toString(i)), new RecordingService(Collections.synchronizedList(new ArrayList<ServiceName>()), started)).install();
+                    }
+                }
+            });
+            installer.start();
+            installer.join(200L);
+            // the installer has to wait for the queue to drain
+            assertTrue(installer.isAlive());
+            final ObjectName objectName = new ObjectName("jboss.msc:type=container,name=bounded-queue");
+            final Integer queueSize = (Integer) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "QueueSize");
+            assertTrue(queueSize.intValue() < serviceCount);
+            release.countDown();
+            installer.join(10000L);
+            assertFalse(installer.isAlive());
+            assertTrue(started.await(10L, TimeUnit.SECONDS));
+            final Integer peakQueueSize = (Integer) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "PeakQueueSize");
+            assertTrue(peakQueueSize.intValue() >= 4);
+            assertTrue(peakQueueSize.intValue() < serviceCount);
+        } finally {
+            release.countDown();
+            boundedContainer.shutdown();
+            boundedContainer.awaitTermination(10L, TimeUnit.SECONDS);
+        }
+        assertTrue(boundedContainer.isShutdownComplete());
+    }
+
+    @Test
+    public void adaptiveLifecyclePoolGrowsForBlockingStarts() throws Exception {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (! threadMXBean.isCurrentThreadCpuTimeSupported() || ! threadMXBean.isThreadCpuTimeEnabled()) {
+            return;
+        }
+        // the bound must leave room to grow past the processor count, which the pool reaches for queued work anyway
+        final int maxSize = Runtime.getRuntime().availableProcessors() + 16;
+        final ServiceContainer adaptiveContainer = ServiceContainer.Factory.create(new ServiceContainerConfiguration()
+                .setName("adaptive-pool").setAdaptiveLifecyclePool(1, maxSize));
+        try {
+            final ObjectName objectName = new ObjectName("jboss.msc:type=container,name=adaptive-pool");
+            final int initialSize = ((Integer) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "LifecyclePoolSize")).intValue();
+            assertEquals(1, initialSize);
+            final int serviceCount = 200;
+            final CountDownLatch started = new CountDownLatch(serviceCount);
+            final Set<Thread> startThreads = Collections.synchronizedSet(new HashSet<Thread>());
+            for (int i = 0; i < serviceCount; i ++) {
+                adaptiveContainer.addService(ServiceName.of("sleepy", Integer.toString(i)), new AbstractService<Void>() {
+                    public void start(final StartContext context) throws StartException {
+                        startThreads.add(Thread.currentThread());
+                        try {
+                            Thread.sleep(10L);
+                        } catch (InterruptedException e) {
+                            throw new StartException(e);
+                        }
+                        started.countDown();
+                    }
+                }).install();
+            }
+            assertTrue(started.await(30L, TimeUnit.SECONDS));
+            // the pool shrinks back toward its minimum once the queue drains, so count the threads that did the work
+            assertTrue(startThreads.size() > initialSize);
+            assertTrue(startThreads.size() <= maxSize);
+        } finally {
+            adaptiveContainer.shutdown();
+            adaptiveContainer.awaitTermination(10L, TimeUnit.SECONDS);
+        }
+        assertTrue(adaptiveContainer.isShutdownComplete());
+    }
+
+    private static final class RecordingService extends AbstractService<Void> {
+        private final List<ServiceName> startOrder;
+        private final CountDownLatch started;
+
+        RecordingService(final List<ServiceName> startOrder, final CountDownLatch started) {
+            this.startOrder = startOrder;
+            this.started = started;
+        }
+
+        public void start(final StartContext context) throws StartException {
+            startOrder.add(context.getController().getName());
+            started.countDown();
+        }
+    }
+
+    private static final class SlowService extends AbstractService<Void> {
+        private final List<ServiceName> startOrder;
+        private final CountDownLatch started;
+
+        SlowService(final List<ServiceName> startOrder, final CountDownLatch started) {
+            this.startOrder = startOrder;
+            this.started = started;
+        }
+
+        public void start(final StartContext context) throws StartException {
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+                throw new StartException(e);
+            }
+            startOrder.add(context.getController().getName());
+            started.countDown();
+        }
+    }
+}
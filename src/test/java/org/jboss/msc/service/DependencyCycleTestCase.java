@@ -22,9 +22,13 @@
 
 package org.jboss.msc.service;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.Future;
 
 import org.jboss.msc.service.ServiceBuilder.DependencyType;
@@ -65,6 +69,7 @@ public class DependencyCycleTestCase extends AbstractServiceTest {
     private final ServiceName serviceUName = ServiceName.of("U");
     private final ServiceName serviceVName = ServiceName.of("V");
     private final ServiceName serviceWName = ServiceName.of("W");
+    private final ServiceName serviceXName = ServiceName.of("X");
     TestServiceListener testListener;
 
     @Before
@@ -83,7 +88,9 @@ public class DependencyCycleTestCase extends AbstractServiceTest {
         try {
             serviceContainer.addService(serviceCName, Service.NULL).addDependency(serviceAName).install();
             fail ("CircularDependencyException expected");
-        } catch (CircularDependencyException e) {}
+        } catch (CircularDependencyException e) {
+            assertEquals("Service " + serviceCName + " has a circular dependency", e.getMessage());
+        }
 
         final ServiceController<?> serviceAController = assertController(serviceAName, serviceAListenerAdded);
         assertSame(State.DOWN, serviceAController.getState());
@@ -431,4 +438,65 @@ public class DependencyCycleTestCase extends AbstractServiceTest {
         final ServiceController<?> serviceJController = serviceContainer.addService(serviceJName, Service.NULL).install();
         assertController(serviceJName, serviceJController);
     }
+
+    @Test
+    public void cycleAfterReordering() throws Exception {
+        // install A and B, unrelated so far
+        final ServiceController<?> serviceAController = serviceContainer.addService(serviceAName, Service.NULL).addDependency(serviceXName).install();
+        assertController(serviceAName, serviceAController);
+        final ServiceController<?> serviceBController = serviceContainer.addService(serviceBName, Service.NULL).addDependency(serviceEName).install();
+        assertController(serviceBName, serviceBController);
+
+        // C, aliased X, has to be placed between B and A
+        final ServiceController<?> serviceCController = serviceContainer.addService(serviceCName, Service.NULL).addAliases(serviceXName).addDependency(serviceBName).install();
+        assertController(serviceCName, serviceCController);
+
+        // now B -> C -> A, so E can't depend on A
+        try {
+            serviceContainer.addService(serviceEName, Service.NULL).addDependency(serviceAName).install();
+            fail ("CircularDependencyException expected");
+        } catch (CircularDependencyException e) {}
+
+        // a chain installed dependents first, D on top of it
+        for (int i = 0; i < 9; i ++) {
+            serviceContainer.addService(ServiceName.of("chain", Integer.toString(i)), Service.NULL).addDependency(ServiceName.of("chain", Integer.toString(i + 1))).install();
+        }
+        final ServiceController<?> serviceDController = serviceContainer.addService(serviceDName, Service.NULL).addDependency(ServiceName.of("chain", "0")).install();
+        assertController(serviceDName, serviceDController);
+
+        // the bottom of the chain can depend on C, but not on D
+        final ServiceName bottomName = ServiceName.of("chain", "9");
+        try {
+            serviceContainer.addService(bottomName, Service.NULL).addDependency(serviceCName).addDependency(serviceDName).install();
+            fail ("CircularDependencyException expected");
+        } catch (CircularDependencyException e) {}
+        final ServiceController<?> bottomController = serviceContainer.addService(bottomName, Service.NULL).addDependency(serviceCName).install();
+        assertController(bottomName, bottomController);
+    }
+
+    @Test
+    public void dependentsInstalledBeforeDependencies() throws Exception {
+        // siblings installed before the service they depend on, and P unrelated so far
+        final ServiceControllerImpl<?>[] siblings = new ServiceControllerImpl<?>[5];
+        for (int i = 0; i < siblings.length; i ++) {
+            siblings[i] = (ServiceControllerImpl<?>) serviceContainer.addService(ServiceName.of("sibling", Integer.toString(i)), Service.NULL).addDependency(serviceMName).install();
+        }
+        final ServiceControllerImpl<?> serviceP = (ServiceControllerImpl<?>) serviceContainer.addService(servicePName, Service.NULL).install();
+        final Set<Long> orders = new HashSet<Long>();
+        for (ServiceControllerImpl<?> sibling : siblings) {
+            assertTrue("orders are distinct", orders.add(Long.valueOf(sibling.getTopologicalOrder())));
+        }
+        assertTrue("orders are distinct", orders.add(Long.valueOf(serviceP.getTopologicalOrder())));
+
+        // M goes after P and before the siblings, which moves P ahead of them; the orders are only exchanged
+        final ServiceControllerImpl<?> serviceM = (ServiceControllerImpl<?>) serviceContainer.addService(serviceMName, Service.NULL).addDependency(servicePName).install();
+        final Set<Long> reordered = new HashSet<Long>();
+        for (ServiceControllerImpl<?> sibling : siblings) {
+            reordered.add(Long.valueOf(sibling.getTopologicalOrder()));
+            assertTrue(serviceM.getTopologicalOrder() < sibling.getTopologicalOrder());
+        }
+        reordered.add(Long.valueOf(serviceP.getTopologicalOrder()));
+        assertEquals(orders, reordered);
+        assertTrue(serviceP.getTopologicalOrder() < serviceM.getTopologicalOrder());
+    }
 }
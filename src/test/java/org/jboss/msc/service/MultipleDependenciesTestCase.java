@@ -182,6 +182,48 @@ public class MultipleDependenciesTestCase extends AbstractServiceTest {
         assertTrue(dependencies.contains(thirdController));
     }
 
+    @Test
+    public void fanIn() throws Exception {
+        final int dependencyCount = 300;
+        final ServiceName hubName = ServiceName.of("hub");
+        final ServiceName[] dependencyNames = new ServiceName[dependencyCount];
+        for (int i = 0; i < dependencyCount; i++) {
+            dependencyNames[i] = ServiceName.of("dependency", Integer.toString(i));
+        }
+        final Future<ServiceController<?>> hubDependencyMissing = listener.expectDependencyUninstall(hubName);
+        serviceContainer.addService(hubName, Service.NULL).addDependencies(dependencyNames).addListener(listener).install();
+        final ServiceController<?> hubController = assertController(hubName, hubDependencyMissing);
+
+        // the dependencies come up concurrently on the container threads
+        final Future<ServiceController<?>> hubStart = listener.expectServiceStart(hubName);
+        final List<ServiceController<?>> dependencyControllers = new ArrayList<ServiceController<?>>(dependencyCount);
+        for (ServiceName dependencyName : dependencyNames) {
+            dependencyControllers.add(serviceContainer.addService(dependencyName, Service.NULL).setInitialMode(ServiceController.Mode.ON_DEMAND).install());
+        }
+        assertController(hubController, hubStart);
+        for (ServiceController<?> dependencyController : dependencyControllers) {
+            assertEquals(ServiceController.State.UP, dependencyController.getState());
+        }
+
+        // stop and restart the hub by way of a single dependency, and then all of them at once
+        Future<ServiceController<?>> hubStop = listener.expectServiceStop(hubName);
+        dependencyControllers.get(dependencyCount / 2).setMode(ServiceController.Mode.NEVER);
+        assertController(hubController, hubStop);
+        Future<ServiceController<?>> hubRestart = listener.expectServiceStart(hubName);
+        dependencyControllers.get(dependencyCount / 2).setMode(ServiceController.Mode.ON_DEMAND);
+        assertController(hubController, hubRestart);
+
+        hubStop = listener.expectServiceStop(hubName);
+        hubController.setMode(ServiceController.Mode.NEVER);
+        assertController(hubController, hubStop);
+        for (ServiceController<?> dependencyController : dependencyControllers) {
+            dependencyController.setMode(ServiceController.Mode.ACTIVE);
+        }
+        hubRestart = listener.expectServiceStart(hubName);
+        hubController.setMode(ServiceController.Mode.ACTIVE);
+        assertController(hubController, hubRestart);
+    }
+
     @Test
     public void installNull() throws Exception {
         /*builder.addDependency((ServiceName) null);
@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.jboss.msc.util.TestServiceListener;
+import org.junit.Test;
+
+/**
+ * Test for {@link ServiceContainer#activate(java.util.Collection)}.
+ */
+public class ServiceActivatorTestCase extends AbstractServiceTest {
+
+    @Test
+    public void activateMany() throws Exception {
+        final List<ServiceActivator> activators = new ArrayList<ServiceActivator>();
+        for (int i = 0; i < 50; i ++) {
+            final ServiceName name = ServiceName.of("activator", Integer.toString(i));
+            activators.add(new ServiceActivator() {
+                public void activate(final ServiceActivatorContext serviceActivatorContext) throws ServiceRegistryException {
+                    assertTrue(serviceActivatorContext.getServiceTarget() instanceof BatchServiceTarget);
+                    for (int j = 0; j < 20; j ++) {
+                        serviceActivatorContext.getServiceTarget().addService(name.append(Integer.toString(j)), Service.NULL).install();
+                    }
+                }
+            });
+        }
+        final Map<ServiceActivator, Throwable> failures = serviceContainer.activate(activators);
+        assertTrue(failures.isEmpty());
+        assertEquals(1000, serviceContainer.getServiceNames().size());
+    }
+
+    @Test
+    public void activateWithFailure() throws Exception {
+        final TestServiceListener testListener = new TestServiceListener();
+        final ServiceName goodName = ServiceName.of("good");
+        final ServiceName badName = ServiceName.of("bad");
+        final RuntimeException failure = new RuntimeException("activation failed");
+        final ServiceActivator good = new ServiceActivator() {
+            public void activate(final ServiceActivatorContext serviceActivatorContext) throws ServiceRegistryException {
+                serviceActivatorContext.getServiceTarget().addService(goodName, Service.NULL).install();
+            }
+        };
+        final ServiceActivator bad = new ServiceActivator() {
+            public void activate(final ServiceActivatorContext serviceActivatorContext) throws ServiceRegistryException {
+                serviceActivatorContext.getServiceTarget().addListener(testListener).addService(badName, Service.NULL).install();
+                throw failure;
+            }
+        };
+        final Future<ServiceController<?>> badRemoval = testListener.expectServiceRemoval(badName);
+        final List<ServiceActivator> activators = new ArrayList<ServiceActivator>();
+        activators.add(good);
+        activators.add(bad);
+        final Map<ServiceActivator, Throwable> failures = serviceContainer.activate(activators);
+        assertEquals(1, failures.size());
+        assertSame(failure, failures.get(bad));
+        assertNotNull(serviceContainer.getService(goodName));
+        // the services of the failed activator are removed
+        assertNotNull(badRemoval.get());
+        assertNull(serviceContainer.getService(badName));
+    }
+}
@@ -24,10 +24,19 @@ package org.jboss.msc.service;
 
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.msc.service.ServiceController.Mode;
 import org.jboss.msc.service.ServiceController.State;
@@ -303,6 +312,153 @@ public class ServiceControllerTestCase extends AbstractServiceTest {
         assertSame(State.DOWN, serviceController.getState());
     }
 
+    @Test
+    public void registrationsReclaimedOnRemoval() throws Exception {
+        final TestServiceListener listener = new TestServiceListener();
+        final ServiceName serviceName = ServiceName.of("service", "one");
+        final Future<ServiceController<?>> dependencyFailureFuture = listener.expectDependencyUninstall(serviceName);
+        final ServiceController<?> serviceController = serviceContainer.addService(serviceName, Service.NULL)
+            .addAliases(ServiceName.of("alias", "one"))
+            .addDependency(ServiceName.of("missing", "dependency"))
+            .addOptionalDependency(ServiceName.of("missing", "optional"))
+            .addListener(listener)
+            .install();
+        assertController(serviceController, dependencyFailureFuture);
+
+        final Future<ServiceController<?>> removalFuture = listener.expectServiceRemoval(serviceName);
+        serviceController.setMode(Mode.REMOVE);
+        assertController(serviceController, removalFuture);
+
+        // neither the service's own names nor the names it depended on remain registered
+        assertTrue(serviceContainer.getServices(ServiceName.of("service")).isEmpty());
+        final ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        serviceContainer.dumpServices(new PrintStream(dump, true));
+        assertTrue(dump.toString(), dump.toString().contains("(Registry is empty)"));
+
+        // and the names can be used again
+        final Future<ServiceController<?>> serviceStartFuture = listener.expectServiceStart(ServiceName.of("missing", "dependency"));
+        final ServiceController<?> dependencyController = serviceContainer.addService(ServiceName.of("missing", "dependency"), Service.NULL)
+            .addListener(listener)
+            .install();
+        assertController(dependencyController, serviceStartFuture);
+        assertSame(dependencyController, serviceContainer.getService(ServiceName.of("missing", "dependency")));
+    }
+
+    @Test
+    public void demandedRegistrationReclaimedOnRemoval() throws Exception {
+        final TestServiceListener listener = new TestServiceListener();
+        final ServiceName serviceName = ServiceName.of("service", "active");
+        final Future<ServiceController<?>> dependencyUninstallFuture = listener.expectDependencyUninstall(serviceName);
+        // an active service demands the missing dependency
+        final ServiceController<?> serviceController = serviceContainer.addService(serviceName, Service.NULL)
+            .addDependency(ServiceName.of("missing", "demanded"))
+            .setInitialMode(Mode.ACTIVE)
+            .addListener(listener)
+            .install();
+        assertController(serviceController, dependencyUninstallFuture);
+
+        final Future<ServiceController<?>> removalFuture = listener.expectServiceRemoval(serviceName);
+        serviceController.setMode(Mode.REMOVE);
+        assertController(serviceController, removalFuture);
+
+        // the demand may be withdrawn after the dependent is gone; the registration is reclaimed either way
+        String dump = null;
+        for (int i = 0; i < 100; i ++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serviceContainer.dumpServices(new PrintStream(out, true));
+            dump = out.toString();
+            if (dump.contains("(Registry is empty)")) {
+                break;
+            }
+            Thread.sleep(50L);
+        }
+        assertTrue(dump, dump.contains("(Registry is empty)"));
+    }
+
+    @Test
+    public void listenersAcrossInlineBoundary() throws Exception {
+        final CountDownLatch removed = new CountDownLatch(9);
+        final List<CountingListener> grown = new ArrayList<CountingListener>();
+        final List<CountingListener> shrunk = new ArrayList<CountingListener>();
+        for (int i = 0; i < 6; i ++) {
+            grown.add(new CountingListener(removed));
+            shrunk.add(new CountingListener(removed));
+        }
+        final TestServiceListener listener = new TestServiceListener();
+        final Future<ServiceController<?>> grownStart = listener.expectServiceStart(ServiceName.of("grown"));
+        final Future<ServiceController<?>> shrunkStart = listener.expectServiceStart(ServiceName.of("shrunk"));
+        // starts with an inline array and grows past it
+        final ServiceController<?> grownController = serviceContainer.addService(ServiceName.of("grown"), Service.NULL)
+            .addListener(listener)
+            .addListener(grown.subList(0, 2))
+            .install();
+        assertController(grownController, grownStart);
+        for (CountingListener counting : grown.subList(2, 6)) {
+            grownController.addListener(counting);
+        }
+        // starts with a set and shrinks back to the inline size
+        final ServiceController<?> shrunkController = serviceContainer.addService(ServiceName.of("shrunk"), Service.NULL)
+            .addListener(listener)
+            .addListener(shrunk)
+            .install();
+        assertController(shrunkController, shrunkStart);
+        for (CountingListener counting : shrunk.subList(3, 6)) {
+            shrunkController.removeListener(counting);
+        }
+        try {
+            grownController.addListener(grown.get(0));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {}
+        try {
+            shrunkController.addListener(shrunk.get(0));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {}
+
+        grownController.setMode(Mode.REMOVE);
+        shrunkController.setMode(Mode.REMOVE);
+        // a controller is only removed once the notifications before its removal are done
+        assertTrue(removed.await(10L, TimeUnit.SECONDS));
+        for (CountingListener counting : grown) {
+            counting.assertNotified(1, 1);
+        }
+        for (CountingListener counting : shrunk.subList(0, 3)) {
+            counting.assertNotified(1, 1);
+        }
+        for (CountingListener counting : shrunk.subList(3, 6)) {
+            counting.assertNotified(1, 0);
+        }
+    }
+
+    private static final class CountingListener extends AbstractServiceListener<Object> {
+        private final CountDownLatch removedLatch;
+        private final AtomicInteger added = new AtomicInteger();
+        private final AtomicInteger stopped = new AtomicInteger();
+        private final AtomicInteger removed = new AtomicInteger();
+
+        CountingListener(final CountDownLatch removedLatch) {
+            this.removedLatch = removedLatch;
+        }
+
+        public void listenerAdded(final ServiceController<?> controller) {
+            added.incrementAndGet();
+        }
+
+        public void serviceStopped(final ServiceController<?> controller) {
+            stopped.incrementAndGet();
+        }
+
+        public void serviceRemoved(final ServiceController<?> controller) {
+            removed.incrementAndGet();
+            removedLatch.countDown();
+        }
+
+        void assertNotified(final int addedCount, final int removedCount) {
+            assertEquals(addedCount, added.get());
+            assertEquals(removedCount, stopped.get());
+            assertEquals(removedCount, removed.get());
+        }
+    }
+
     private static void assertState(final ServiceContainer serviceContainer, final ServiceName serviceName, final ServiceController.State state) {
         assertEquals(state, serviceContainer.getService(serviceName).getState());
     }
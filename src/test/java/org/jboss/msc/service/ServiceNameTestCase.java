@@ -25,7 +25,9 @@ package org.jboss.msc.service;
 import static java.lang.Integer.signum;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
@@ -160,6 +162,38 @@ public final class ServiceNameTestCase {
         }
     }
 
+    @Test
+    public void testParseUnquoted() {
+        assertEquals(ServiceName.of("jboss", "deployment", "unit", "app-1.0", "START"), ServiceName.parse("jboss.deployment.unit.\"app-1.0\".START"));
+        assertEquals(ServiceName.of("jboss", "naming", "context", "java:comp/env"), ServiceName.parse("jboss.naming.context.java:comp/env"));
+        assertEquals(ServiceName.of("\u00e9t\u00e9", "\ud834\udd1e"), ServiceName.parse("\u00e9t\u00e9.\ud834\udd1e"));
+        assertEquals("jboss.\"web app\".x", ServiceName.parse("jboss.\"web app\".x").getCanonicalName());
+        for (String invalid : new String[] { ".a", "a.", "a..b", "a.b\\c", "a.b\"c\"", "a\u0085b", "a\u00a0b\u2028" }) {
+            try {
+                ServiceName.parse(invalid);
+                fail("Expected exception: " + invalid);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        try {
+            ServiceName.parse("abc.d\\e");
+            fail("Expected exception: backslash in simple name");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("Invalid name character at offset 5", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testParseCacheSize() {
+        assertEquals(0, ServiceName.parseCacheSize(null));
+        assertEquals(256, ServiceName.parseCacheSize("256"));
+        assertEquals(256, ServiceName.parseCacheSize(" 256 "));
+        assertEquals(0, ServiceName.parseCacheSize("-1"));
+        assertEquals(0, ServiceName.parseCacheSize(""));
+        assertEquals(0, ServiceName.parseCacheSize("256k"));
+        assertEquals(0, ServiceName.parseCacheSize("99999999999"));
+    }
+
     @Test
     public void testInvalidServiceName() {
         // this untrusted service name can be created with of, because of performance issues
@@ -293,4 +327,28 @@ public final class ServiceNameTestCase {
         ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes));
         assertEquals(serviceName, objectInputStream.readObject());
     }
+
+    @Test
+    public void testCachedCanonicalName() {
+        final ServiceName parent = ServiceName.of("jboss", "a b");
+        final ServiceName child = parent.append("c.d");
+        assertEquals("jboss.\"a b\"", parent.getCanonicalName());
+        assertSame(parent.getCanonicalName(), parent.getCanonicalName());
+        assertEquals("jboss.\"a b\".\"c.d\"", child.getCanonicalName());
+        assertSame(child.getCanonicalName(), child.getCanonicalName());
+        assertEquals("service jboss.\"a b\".\"c.d\"", child.toString());
+    }
+
+    @Test
+    public void testIntern() throws Exception {
+        final ServiceName name = ServiceName.intern(ServiceName.of("intern", "one", "two"));
+        assertSame(name, ServiceName.intern(ServiceName.of("intern", "one", "two")));
+        assertSame(name.getParent(), ServiceName.intern(ServiceName.of("intern", "one")));
+        assertSame(name.getParent().getParent(), ServiceName.intern(ServiceName.of("intern")));
+        assertSame(name, ServiceName.intern(name));
+        final ServiceName other = ServiceName.intern(ServiceName.of("intern", "one", "three"));
+        assertNotSame(name, other);
+        assertFalse(name.equals(other));
+        assertSame(name.getParent(), other.getParent());
+    }
 }
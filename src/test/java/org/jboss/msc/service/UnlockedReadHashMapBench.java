@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.msc.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Measures the throughput of {@link UnlockedReadHashMap} against {@link ConcurrentHashMap} when several threads
+ * register names at once, the way {@code ServiceContainerImpl.getOrCreateRegistration()} does during a parallel
+ * deployment: a lookup, then a {@code putIfAbsent()} on a miss.  Each iteration starts from a small map, so that it
+ * includes the resizes.  It lives in this package because the map is package-private; run it from the test class
+ * path with {@code java org.openjdk.jmh.Main UnlockedReadHashMapBench}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class UnlockedReadHashMapBench {
+
+    /**
+     * The names registered by each thread, before it goes round again and only finds them.
+     */
+    static final int NAMES_PER_THREAD = 1 << 16;
+
+    @Param({ "UnlockedReadHashMap", "ConcurrentHashMap" })
+    public String map;
+
+    ConcurrentMap<ServiceName, Object> names;
+
+    @Setup(Level.Iteration)
+    public void createMap() {
+        if ("UnlockedReadHashMap".equals(map)) {
+            names = new UnlockedReadHashMap<ServiceName, Object>(16);
+        } else {
+            names = new ConcurrentHashMap<ServiceName, Object>(16);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Registrar {
+
+        final Object value = new Object();
+        ServiceName[] names;
+        int next;
+
+        @Setup
+        public void createNames(final ThreadParams threadParams) {
+            final int thread = threadParams.getThreadIndex();
+            names = new ServiceName[NAMES_PER_THREAD];
+            for (int i = 0; i < NAMES_PER_THREAD; i++) {
+                // threads share half of their names, as dependencies on common services do
+                names[i] = i % 2 == 0 ? ServiceName.of("shared", Integer.toString(i)) : ServiceName.of("thread" + thread, Integer.toString(i));
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void rewind() {
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    public Object register(final Registrar registrar) {
+        final ServiceName name = registrar.names[registrar.next];
+        registrar.next = (registrar.next + 1) & (NAMES_PER_THREAD - 1);
+        final Object existing = names.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        final Object value = names.putIfAbsent(name, registrar.value);
+        return value == null ? registrar.value : value;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.msc.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link UnlockedReadHashMap}.
+ */
+public class UnlockedReadHashMapTestCase {
+
+    @Test
+    public void putGetRemove() {
+        final UnlockedReadHashMap<String, Integer> map = new UnlockedReadHashMap<String, Integer>(4);
+        assertTrue(map.isEmpty());
+        assertNull(map.put("one", 1));
+        assertEquals(Integer.valueOf(1), map.put("one", 11));
+        assertEquals(Integer.valueOf(11), map.putIfAbsent("one", 111));
+        assertNull(map.putIfAbsent("two", 2));
+        assertEquals(2, map.size());
+        assertEquals(Integer.valueOf(11), map.get("one"));
+        assertTrue(map.containsKey("two"));
+        assertFalse(map.containsKey("three"));
+        assertFalse(map.replace("one", 1, 1));
+        assertTrue(map.replace("one", 11, 1));
+        assertEquals(Integer.valueOf(1), map.replace("one", 10));
+        assertNull(map.replace("three", 3));
+        assertFalse(map.remove("one", 1));
+        assertTrue(map.remove("one", 10));
+        assertEquals(Integer.valueOf(2), map.remove("two"));
+        assertNull(map.remove("two"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void entrySetValue() {
+        final UnlockedReadHashMap<String, Integer> map = new UnlockedReadHashMap<String, Integer>(4);
+        map.put("one", 1);
+        final Map.Entry<String, Integer> entry = map.entrySet().iterator().next();
+        assertEquals(Integer.valueOf(1), entry.setValue(2));
+        assertEquals(Integer.valueOf(2), map.get("one"));
+    }
+
+    @Test
+    public void resize() {
+        final UnlockedReadHashMap<Integer, Integer> map = new UnlockedReadHashMap<Integer, Integer>(2);
+        final Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 10000; i++) {
+            assertNull(map.put(Integer.valueOf(i), Integer.valueOf(-i)));
+            expected.put(Integer.valueOf(i), Integer.valueOf(-i));
+        }
+        for (int i = 0; i < 10000; i += 3) {
+            assertEquals(Integer.valueOf(-i), map.remove(Integer.valueOf(i)));
+            expected.remove(Integer.valueOf(i));
+        }
+        assertEquals(expected, map);
+        assertEquals(expected, new HashMap<Integer, Integer>(map));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.entrySet().size());
+    }
+
+    @Test
+    public void concurrentWriters() throws Exception {
+        final UnlockedReadHashMap<Integer, Integer> map = new UnlockedReadHashMap<Integer, Integer>(2);
+        final int threadCount = 8;
+        final int keysPerThread = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger winners = new AtomicInteger();
+        final Throwable[] failures = new Throwable[threadCount];
+        final Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < keysPerThread; i++) {
+                            // each thread owns some keys and races the others for the rest
+                            final Integer owned = Integer.valueOf(id * keysPerThread + i);
+                            map.put(owned, owned);
+                            final Integer shared = Integer.valueOf(-1 - i);
+                            if (map.putIfAbsent(shared, Integer.valueOf(id)) == null) {
+                                winners.incrementAndGet();
+                            }
+                            if (i % 2 == 0) {
+                                if (map.remove(owned) != owned) {
+                                    throw new AssertionError("Lost " + owned);
+                                }
+                            }
+                            if (map.get(shared) == null) {
+                                throw new AssertionError("Lost " + shared);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failures[id] = t;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Throwable failure : failures) {
+            if (failure != null) {
+                throw new AssertionError(failure);
+            }
+        }
+        assertEquals(keysPerThread, winners.get());
+        assertEquals(keysPerThread + threadCount * keysPerThread / 2, map.size());
+        final Set<Integer> keys = new HashSet<Integer>();
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            assertTrue(keys.add(entry.getKey()));
+            final int key = entry.getKey().intValue();
+            if (key >= 0) {
+                assertSame(entry.getKey(), entry.getValue());
+                assertEquals(1, key % keysPerThread % 2);
+            }
+        }
+        assertEquals(map.size(), keys.size());
+    }
+}